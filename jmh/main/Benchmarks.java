@@ -0,0 +1,122 @@
+package main;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// JMH benchmarks over a SyntheticProject of the shape given by the parameters, e.g.
+//
+//   ./gradlew jmh -Pjmh.includes=generate
+//
+// The build runs them with -prof gc, which adds the allocation rate, the bytes allocated per
+// operation and the collections to the average time per operation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Benchmarks {
+    @Param("200")
+    public int packages;
+    @Param("5")
+    public int depth;
+    @Param("20")
+    public int classes;
+    @Param("5")
+    public int edges;
+    @Param("0.25")
+    public double interfaceRatio;
+
+    private Path directory;
+    private File jar;
+    private File xml;
+    private DependencyParser analyzed;
+    private ModelSnapshot snapshot;
+    private UMLGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticProject project = new SyntheticProject(packages, depth, classes, edges, interfaceRatio, 42L);
+        directory = Files.createTempDirectory("synthetic-project");
+        jar = directory.resolve("synthetic.jar").toFile();
+        xml = directory.resolve("synthetic_dependencies.xml").toFile();
+        project.writeJar(jar);
+        project.writeXml(xml);
+        analyzed = new DependencyParser();
+        analyzed.analyzeJar(jar.getPath());
+        snapshot = analyzed.snapshot();
+        generator = UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(jar.toPath());
+        Files.deleteIfExists(xml.toPath());
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public DependencyParser parseXmlStax() throws Exception {
+        DependencyParser parser = new DependencyParser();
+        parser.parseXML(xml, jar.getPath(), DependencyParser.XmlParseMode.STAX);
+        return parser;
+    }
+
+    @Benchmark
+    public DependencyParser parseXmlDom() throws Exception {
+        DependencyParser parser = new DependencyParser();
+        parser.parseXML(xml, jar.getPath(), DependencyParser.XmlParseMode.DOM);
+        return parser;
+    }
+
+    @Benchmark
+    public DependencyParser analyzeJar() throws Exception {
+        DependencyParser parser = new DependencyParser();
+        parser.analyzeJar(jar.getPath());
+        return parser;
+    }
+
+    @Benchmark
+    public int getGlobalMaxDepth() {
+        return analyzed.getGlobalMaxDepth();
+    }
+
+    @Benchmark
+    public ModelSnapshot snapshot() {
+        return analyzed.snapshot();
+    }
+
+    @Benchmark
+    public String generateWhiteBox() {
+        return generator.generateUML(snapshot, new UMLGenerator.View(UMLGenerator.VisualizationMode.WHITE_BOX, 0));
+    }
+
+    @Benchmark
+    public String generateGrayBox() {
+        return generator.generateUML(snapshot, new UMLGenerator.View(UMLGenerator.VisualizationMode.GRAY_BOX, 1));
+    }
+
+    @Benchmark
+    public String generateBlackBox() {
+        return generator.generateUML(snapshot, new UMLGenerator.View(UMLGenerator.VisualizationMode.BLACK_BOX, 0));
+    }
+
+    @Benchmark
+    public Map<UMLGenerator.View, String> generateViews() {
+        return generator.generateViews(snapshot, UMLGenerator.View.allViews(snapshot.getGlobalMaxDepth()));
+    }
+
+    // Everything but rendering, which needs PlantUML and is measured by PlantUML itself
+    @Benchmark
+    public Map<UMLGenerator.View, String> endToEnd() throws Exception {
+        DependencyParser parser = new DependencyParser();
+        parser.analyzeJar(jar.getPath());
+        ModelSnapshot model = parser.snapshot();
+        return generator.generateViews(model, UMLGenerator.View.allViews(model.getGlobalMaxDepth()));
+    }
+}
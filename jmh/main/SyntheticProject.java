@@ -0,0 +1,260 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+// Generates a made-up project of a given shape for benchmarks: a package tree, classes and
+// interfaces in every package, and outbound edges between them. The same project can be
+// written as a JAR of real class files and as the DependencyFinder XML report of that JAR.
+// Everything is derived from the seed, so equal settings always give byte-identical inputs.
+public class SyntheticProject {
+    private static final int CLASS_FILE_VERSION = 52; // Java 8, no stack maps needed without code
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+
+    private final int packages;
+    private final int depth;
+    private final int classesPerPackage;
+    private final int edgesPerClass;
+    private final double interfaceRatio;
+
+    // Package names in creation order; every parent comes before its children
+    private final List<String> packageNames = new ArrayList<>();
+    private final List<SyntheticClass> classes = new ArrayList<>();
+
+    private static class SyntheticClass {
+        final String name;
+        final boolean isInterface;
+        final List<SyntheticClass> implemented = new ArrayList<>();
+        final List<SyntheticClass> fieldTypes = new ArrayList<>();
+
+        SyntheticClass(String name, boolean isInterface) {
+            this.name = name;
+            this.isInterface = isInterface;
+        }
+    }
+
+    public SyntheticProject(int packages, int depth, int classesPerPackage, int edgesPerClass, double interfaceRatio, long seed) {
+        if (packages < 1 || depth < 1 || classesPerPackage < 1 || edgesPerClass < 0) {
+            throw new IllegalArgumentException("Packages, depth and classes per package must be at least 1, edges at least 0");
+        }
+        if (interfaceRatio < 0 || interfaceRatio > 1) {
+            throw new IllegalArgumentException("Interface ratio must be between 0 and 1: " + interfaceRatio);
+        }
+        this.packages = packages;
+        this.depth = depth;
+        this.classesPerPackage = classesPerPackage;
+        this.edgesPerClass = edgesPerClass;
+        this.interfaceRatio = interfaceRatio;
+        build(new Random(seed));
+    }
+
+    // Shape from system properties, e.g. -Dsynthetic.packages=500, for main
+    public static SyntheticProject fromSystemProperties() {
+        return new SyntheticProject(
+                Integer.getInteger("synthetic.packages", 200),
+                Integer.getInteger("synthetic.depth", 5),
+                Integer.getInteger("synthetic.classes", 20),
+                Integer.getInteger("synthetic.edges", 5),
+                Double.parseDouble(System.getProperty("synthetic.interfaceRatio", "0.25")),
+                Long.getLong("synthetic.seed", 42L));
+    }
+
+    public int getClassCount() {
+        return classes.size();
+    }
+
+    @Override
+    public String toString() {
+        return packages + " packages, depth " + depth + ", " + classesPerPackage + " classes per package, "
+                + edgesPerClass + " edges per class, interface ratio " + interfaceRatio;
+    }
+
+    private void build(Random random) {
+        int[] levels = new int[packages];
+        List<Integer> canHaveChildren = new ArrayList<>();
+        for (int i = 0; i < packages; i++) {
+            int parent;
+            if (i == 0) {
+                parent = -1;
+            } else if (i < depth) {
+                // The first packages form one chain, so the requested depth is always reached
+                parent = i - 1;
+            } else {
+                int choice = random.nextInt(canHaveChildren.size() + 1);
+                parent = choice == canHaveChildren.size() ? -1 : canHaveChildren.get(choice);
+            }
+            String name = parent == -1 ? "p" + i : packageNames.get(parent) + ".p" + i;
+            levels[i] = parent == -1 ? 1 : levels[parent] + 1;
+            packageNames.add(name);
+            if (levels[i] < depth) {
+                canHaveChildren.add(i);
+            }
+        }
+
+        for (String packageName : packageNames) {
+            for (int i = 0; i < classesPerPackage; i++) {
+                boolean isInterface = random.nextDouble() < interfaceRatio;
+                String simpleName = (isInterface ? "I" : "C") + classes.size();
+                classes.add(new SyntheticClass(packageName + "." + simpleName, isInterface));
+            }
+        }
+
+        for (SyntheticClass clazz : classes) {
+            for (int i = 0; i < edgesPerClass && classes.size() > 1; i++) {
+                SyntheticClass target = classes.get(random.nextInt(classes.size()));
+                if (target == clazz) {
+                    continue;
+                }
+                // A class implements the interfaces it points at, everything else becomes a field
+                if (!clazz.isInterface && target.isInterface && !clazz.implemented.contains(target)) {
+                    clazz.implemented.add(target);
+                } else {
+                    clazz.fieldTypes.add(target);
+                }
+            }
+        }
+    }
+
+    public void writeJar(File jarFile) throws IOException {
+        try (JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(jarFile)))) {
+            for (SyntheticClass clazz : classes) {
+                jar.putNextEntry(new JarEntry(clazz.name.replace('.', '/') + ".class"));
+                jar.write(classFile(clazz));
+                jar.closeEntry();
+            }
+        }
+    }
+
+    // The subset of DependencyFinder's -xml output that DependencyParser.parseXML reads
+    public void writeXml(File xmlFile) throws IOException {
+        Map<String, List<SyntheticClass>> byPackage = new LinkedHashMap<>();
+        for (SyntheticClass clazz : classes) {
+            byPackage.computeIfAbsent(clazz.name.substring(0, clazz.name.lastIndexOf('.')), k -> new ArrayList<>()).add(clazz);
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(xmlFile), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<dependencies>\n");
+            for (Map.Entry<String, List<SyntheticClass>> entry : byPackage.entrySet()) {
+                out.write("    <package confirmed=\"yes\">\n        <name>" + entry.getKey() + "</name>\n");
+                for (SyntheticClass clazz : entry.getValue()) {
+                    out.write("        <class confirmed=\"yes\">\n            <name>" + clazz.name + "</name>\n");
+                    Set<String> outbound = new LinkedHashSet<>();
+                    clazz.implemented.forEach(target -> outbound.add(target.name));
+                    clazz.fieldTypes.forEach(target -> outbound.add(target.name));
+                    for (String target : outbound) {
+                        out.write("            <outbound type=\"class\" confirmed=\"yes\">" + target + "</outbound>\n");
+                    }
+                    out.write("        </class>\n");
+                }
+                out.write("    </package>\n");
+            }
+            out.write("</dependencies>\n");
+        }
+    }
+
+    // A class file with a header, the implemented interfaces and one field per remaining edge
+    private static byte[] classFile(SyntheticClass clazz) throws IOException {
+        ConstantPoolBuilder pool = new ConstantPoolBuilder();
+        int thisClass = pool.classRef(clazz.name);
+        int superClass = pool.classRef("java.lang.Object");
+        int[] interfaces = new int[clazz.implemented.size()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = pool.classRef(clazz.implemented.get(i).name);
+        }
+        int[][] fields = new int[clazz.fieldTypes.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new int[]{pool.utf8("f" + i), pool.utf8("L" + clazz.fieldTypes.get(i).name.replace('.', '/') + ";")};
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_FILE_VERSION);
+        pool.writeTo(out);
+        out.writeShort(clazz.isInterface ? ACC_PUBLIC | ACC_INTERFACE | ACC_ABSTRACT : ACC_PUBLIC | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(interfaces.length);
+        for (int index : interfaces) {
+            out.writeShort(index);
+        }
+        out.writeShort(fields.length);
+        for (int[] field : fields) {
+            // Interface fields have to be constants
+            out.writeShort(clazz.isInterface ? ACC_PUBLIC | ACC_STATIC | ACC_FINAL : ACC_PUBLIC);
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(0); // attributes
+        }
+        out.writeShort(0); // methods
+        out.writeShort(0); // attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Utf8 and Class constants only, each written once
+    private static class ConstantPoolBuilder {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_CLASS = 7;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = indexes.get("U" + value);
+            if (index == null) {
+                data.writeByte(CONSTANT_UTF8);
+                data.writeUTF(value);
+                index = count++;
+                indexes.put("U" + value, index);
+            }
+            return index;
+        }
+
+        int classRef(String className) throws IOException {
+            Integer index = indexes.get("C" + className);
+            if (index == null) {
+                int nameIndex = utf8(className.replace('.', '/'));
+                data.writeByte(CONSTANT_CLASS);
+                data.writeShort(nameIndex);
+                index = count++;
+                indexes.put("C" + className, index);
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeShort(count);
+            data.flush();
+            bytes.writeTo(out);
+        }
+    }
+
+    // Writes <dir>/synthetic.jar and <dir>/synthetic_dependencies.xml, shaped by the synthetic.* properties
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : ".");
+        Files.createDirectories(directory);
+        SyntheticProject project = fromSystemProperties();
+        File jar = directory.resolve("synthetic.jar").toFile();
+        File xml = directory.resolve("synthetic_dependencies.xml").toFile();
+        project.writeJar(jar);
+        project.writeXml(xml);
+        System.out.println("Generated " + project.getClassCount() + " classes (" + project + ")");
+        System.out.println(jar.getAbsolutePath());
+        System.out.println(xml.getAbsolutePath());
+    }
+}
@@ -0,0 +1,382 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+
+// On-disk cache of analysis results.
+// - models/<content key>: the finished component model and the classes it references but could
+//   not find, keyed by a hash of the names and CRC32s of the class entries, so an unchanged JAR
+//   is answered without touching a single class file.
+// - classes/<path key>: the decoded class files of the last analysis of a JAR path together with
+//   their CRC32s, so a changed JAR only decodes the entries whose CRC differs.
+// Each directory is bounded in bytes (-Danalysis.cache.maxBytes) and evicts the least recently
+// used entries first, recency being the modification time, which every hit renews.
+public class AnalysisCache {
+    private static final long DEFAULT_MAX_BYTES = Long.getLong("analysis.cache.maxBytes", 512L * 1024 * 1024);
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MODEL_MAGIC = 0x43444d4c;   // "CDML"
+    private static final int CLASSES_MAGIC = 0x43444343; // "CDCC"
+
+    private final Directory modelDirectory;
+    private final Directory classesDirectory;
+
+    // A decoded class file and the CRC32 of the entry it was decoded from
+    public static class CachedClass {
+        private final long crc;
+        private final ClassFileInfo info;
+
+        public CachedClass(long crc, ClassFileInfo info) {
+            this.crc = crc;
+            this.info = info;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public ClassFileInfo getInfo() {
+            return info;
+        }
+    }
+
+    // A cached analysis: its components by package name and its unresolved classes
+    public static class CachedModel {
+        private final Map<String, Component> components;
+        private final Set<String> unresolvedClasses;
+
+        public CachedModel(Map<String, Component> components, Set<String> unresolvedClasses) {
+            this.components = components;
+            this.unresolvedClasses = unresolvedClasses;
+        }
+
+        public Map<String, Component> getComponents() {
+            return components;
+        }
+
+        public Set<String> getUnresolvedClasses() {
+            return unresolvedClasses;
+        }
+    }
+
+    public AnalysisCache(Path directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    // maxBytes bounds models/ and classes/ each
+    public AnalysisCache(Path directory, long maxBytes) {
+        this.modelDirectory = new Directory(directory.resolve("models"), maxBytes);
+        this.classesDirectory = new Directory(directory.resolve("classes"), maxBytes);
+    }
+
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".component-diagram-cache");
+    }
+
+    // Hash over the sorted names and CRC32s of the class entries, as stored in the central directory
+    public static String contentKey(List<? extends ZipEntry> classEntries) {
+        List<? extends ZipEntry> sorted = new ArrayList<>(classEntries);
+        sorted.sort(Comparator.comparing(ZipEntry::getName));
+        MessageDigest digest = sha256();
+        digest.update(("v" + FORMAT_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        for (ZipEntry entry : sorted) {
+            digest.update(entry.getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((":" + Long.toHexString(entry.getCrc()) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return toHex(digest.digest());
+    }
+
+    // Returns null when there is no usable model for the key. Components intern into symbols.
+    public CachedModel loadModel(String contentKey, SymbolTable symbols) {
+        Path file = modelDirectory.hit(contentKey);
+        if (file == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            checkHeader(in, MODEL_MAGIC);
+            Map<String, Component> components = readModel(in, symbols);
+            return new CachedModel(components, readStrings(in, new LinkedHashSet<>()));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable cache entry " + file + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    public void storeModel(String contentKey, Collection<Component> components, Collection<String> unresolvedClasses) {
+        write(modelDirectory, contentKey, MODEL_MAGIC, out -> {
+            writeModel(out, components);
+            writeStrings(out, unresolvedClasses);
+        });
+    }
+
+    // Class files of the previous analysis of the JAR, keyed by entry name. Empty when unknown.
+    public Map<String, CachedClass> loadClasses(File jar) {
+        Path file = classesDirectory.hit(pathKey(jar));
+        if (file == null) {
+            return Collections.emptyMap();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            checkHeader(in, CLASSES_MAGIC);
+            int count = readCount(in);
+            Map<String, CachedClass> classes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String entryName = in.readUTF();
+                long crc = in.readLong();
+                classes.put(entryName, new CachedClass(crc, readClassInfo(in)));
+            }
+            return classes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable cache entry " + file + " (" + e.getMessage() + ")");
+            return Collections.emptyMap();
+        }
+    }
+
+    public void storeClasses(File jar, Map<String, CachedClass> classes) {
+        write(classesDirectory, pathKey(jar), CLASSES_MAGIC, out -> {
+            out.writeInt(classes.size());
+            for (Map.Entry<String, CachedClass> entry : classes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().getCrc());
+                writeClassInfo(out, entry.getValue().getInfo());
+            }
+        });
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // Writes to a temporary file first so a crashed run never leaves a truncated entry behind
+    private void write(Directory directory, String name, int magic, Body body) {
+        Path file = directory.path.resolve(name);
+        try {
+            Files.createDirectories(directory.path);
+            Path temp = Files.createTempFile(directory.path, name, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(magic);
+                out.writeInt(FORMAT_VERSION);
+                body.write(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            directory.added(name, Files.size(file));
+        } catch (IOException e) {
+            System.err.println("Could not write cache entry " + file + " (" + e.getMessage() + ")");
+        }
+    }
+
+    // One cache directory and its entries from least to most recently used. The index is read
+    // from the modification times on first use; other processes sharing the directory may add
+    // and evict entries meanwhile, so files it lists can be gone.
+    private static class Directory {
+        final Path path;
+        private final long maxBytes;
+        private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+        private boolean indexed;
+
+        Directory(Path path, long maxBytes) {
+            this.path = path;
+            this.maxBytes = maxBytes;
+        }
+
+        // The file of an entry, marked as used; null when there is none
+        synchronized Path hit(String name) {
+            Path file = path.resolve(name);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            index();
+            entries.get(name);
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                // Recency is only a hint for eviction
+            }
+            return file;
+        }
+
+        // Evicts the least recently used entries other than the one just written
+        synchronized void added(String name, long size) {
+            index();
+            Long previous = entries.put(name, size);
+            bytes += size - (previous == null ? 0 : previous);
+            Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> entry = eldest.next();
+                if (entry.getKey().equals(name)) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(path.resolve(entry.getKey()));
+                } catch (IOException e) {
+                    continue; // in use by another process, try again on a later write
+                }
+                bytes -= entry.getValue();
+                eldest.remove();
+            }
+        }
+
+        private void index() {
+            if (indexed) {
+                return;
+            }
+            indexed = true;
+            Map<String, Long> modified = new HashMap<>();
+            Map<String, Long> sizes = new HashMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path file : stream) {
+                    String name = file.getFileName().toString();
+                    if (Files.isRegularFile(file) && !name.endsWith(".tmp")) {
+                        modified.put(name, Files.getLastModifiedTime(file).toMillis());
+                        sizes.put(name, Files.size(file));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not index cache directory " + path + " (" + e.getMessage() + ")");
+                return;
+            }
+            List<String> names = new ArrayList<>(modified.keySet());
+            names.sort(Comparator.comparing(modified::get));
+            for (String name : names) {
+                entries.put(name, sizes.get(name));
+                bytes += sizes.get(name);
+            }
+        }
+    }
+
+    // Every counted element takes at least one byte, so a count beyond the bytes left in the
+    // file (what available() returns for a file stream) can only come from a corrupt entry
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("corrupt count " + count);
+        }
+        return count;
+    }
+
+    private static void checkHeader(DataInputStream in, int magic) throws IOException {
+        if (in.readInt() != magic || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("unsupported cache format");
+        }
+    }
+
+    private static void writeModel(DataOutputStream out, Collection<Component> components) throws IOException {
+        out.writeInt(components.size());
+        for (Component component : components) {
+            out.writeUTF(component.getName());
+            out.writeInt(component.getDepth());
+            writeStrings(out, component.getComposedParts());
+            writeStrings(out, component.getProvidedInterfaces());
+            writeStrings(out, component.getRequiredInterfaces());
+            writeStrings(out, component.getConcreteDependencies());
+            writeStrings(out, component.getSubPackages().keySet());
+            out.writeInt(component.getClassImplementations().size());
+            for (Map.Entry<String, Set<String>> entry : component.getClassImplementations().entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeStrings(out, entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Component> readModel(DataInputStream in, SymbolTable symbols) throws IOException {
+        int count = readCount(in);
+        Map<String, Component> model = new HashMap<>(count * 2);
+        Map<Component, List<String>> subPackageNames = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            Component component = new Component(in.readUTF(), symbols);
+            component.setDepth(in.readInt());
+            readStrings(in, component.getComposedParts());
+            readStrings(in, component.getProvidedInterfaces());
+            readStrings(in, component.getRequiredInterfaces());
+            readStrings(in, component.getConcreteDependencies());
+            subPackageNames.put(component, readStrings(in, new ArrayList<>()));
+            int implementationCount = readCount(in);
+            for (int j = 0; j < implementationCount; j++) {
+                String className = in.readUTF();
+                for (String interfaceName : readStrings(in, new ArrayList<>())) {
+                    component.addClassImplementation(className, interfaceName);
+                }
+            }
+            model.put(component.getName(), component);
+        }
+        for (Map.Entry<Component, List<String>> entry : subPackageNames.entrySet()) {
+            for (String subPackageName : entry.getValue()) {
+                Component subPackage = model.get(subPackageName);
+                if (subPackage == null) {
+                    throw new IOException("dangling sub-package " + subPackageName);
+                }
+                entry.getKey().addSubPackage(subPackageName, subPackage);
+            }
+        }
+        return model;
+    }
+
+    private static void writeClassInfo(DataOutputStream out, ClassFileInfo info) throws IOException {
+        out.writeUTF(info.getName());
+        out.writeInt(info.getAccessFlags());
+        out.writeBoolean(info.getSuperName() != null);
+        if (info.getSuperName() != null) {
+            out.writeUTF(info.getSuperName());
+        }
+        writeStrings(out, info.getInterfaceNames());
+        writeStrings(out, info.getDependencies());
+    }
+
+    private static ClassFileInfo readClassInfo(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        int accessFlags = in.readInt();
+        String superName = in.readBoolean() ? in.readUTF() : null;
+        List<String> interfaces = readStrings(in, new ArrayList<>());
+        Set<String> dependencies = readStrings(in, new LinkedHashSet<>());
+        return new ClassFileInfo(name, accessFlags, superName, interfaces, dependencies);
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static <C extends Collection<String>> C readStrings(DataInputStream in, C target) throws IOException {
+        int count = readCount(in);
+        for (int i = 0; i < count; i++) {
+            target.add(in.readUTF());
+        }
+        return target;
+    }
+
+    private static String pathKey(File jar) {
+        String path;
+        try {
+            path = jar.getCanonicalPath();
+        } catch (IOException e) {
+            path = jar.getAbsolutePath();
+        }
+        return toHex(sha256().digest(path.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
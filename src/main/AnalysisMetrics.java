@@ -0,0 +1,257 @@
+package main;
+
+import jdk.jfr.*;
+
+import java.util.*;
+
+// Where an analysis spends its time. Every phase of every JAR is timed into this object and is
+// also emitted as a JFR event (jdk.jfr costs nothing while no recording is running), e.g.
+//
+//   java -XX:StartFlightRecording=filename=analysis.jfr main.DependencyParser
+//   jfr print --events main.AnalysisPhase,main.JarAnalysis analysis.jfr
+//
+// snapshot() returns the totals collected so far. One instance may be shared by several
+// parsers (the batch mode does), so all updates are synchronized.
+public class AnalysisMetrics {
+    public enum Phase {
+        DEPENDENCY_FINDER, XML_PARSE, CACHE_LOAD, CLASS_READ, MODEL_BUILD, SNAPSHOT, CYCLES, GENERATE, RENDER
+    }
+
+    @Name("main.AnalysisPhase")
+    @Label("Analysis Phase")
+    @Category("Component Diagram Generator")
+    @Description("One phase of the analysis of a JAR or of the diagram generation")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("JAR")
+        String jar;
+        @Label("Packages")
+        int packages;
+        @Label("Classes")
+        int classes;
+        @Label("Edges")
+        long edges;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+    }
+
+    @Name("main.JarAnalysis")
+    @Label("JAR Analysis")
+    @Category("Component Diagram Generator")
+    @Description("The complete analysis of one JAR")
+    static class JarEvent extends Event {
+        @Label("JAR")
+        String jar;
+        @Label("Packages")
+        int packages;
+        @Label("Classes")
+        int classes;
+        @Label("Edges")
+        long edges;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+        @Label("Class Files Read")
+        long classesLoaded;
+    }
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, Integer> phaseCounts = new EnumMap<>(Phase.class);
+    private int jars;
+    private long bytesRead;
+    private long classesLoaded;
+    private int peakPackages;
+    private int peakClasses;
+    private long peakEdges;
+
+    // Times one phase from creation to close and records it together with its model counts
+    public class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final String jar;
+        private final long start = System.nanoTime();
+        private final Event event;
+        private int packages;
+        private int classes;
+        private long edges;
+        private long bytes;
+        private long classFiles;
+
+        private Timer(Phase phase, String jar) {
+            this.phase = phase;
+            this.jar = jar;
+            this.event = phase == null ? new JarEvent() : new PhaseEvent();
+            event.begin();
+        }
+
+        public String getJar() {
+            return jar;
+        }
+
+        // Counts of the model this phase produced or worked on
+        public Timer model(Collection<Component> components) {
+            packages = components.size();
+            classes = 0;
+            edges = 0;
+            for (Component component : components) {
+                classes += component.getComposedPartIds().size();
+                edges += component.getRequiredInterfaceIds().size() + component.getConcreteDependencyIds().size();
+                for (IntSet implemented : component.getClassImplementationIds().values()) {
+                    edges += implemented.size();
+                }
+            }
+            return this;
+        }
+
+        public Timer bytesRead(long bytes) {
+            this.bytes += bytes;
+            return this;
+        }
+
+        public Timer classesLoaded(long classFiles) {
+            this.classFiles += classFiles;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            record(phase, System.nanoTime() - start, this);
+            event.end();
+            if (event.shouldCommit()) {
+                if (phase == null) {
+                    JarEvent jarEvent = (JarEvent) event;
+                    jarEvent.jar = jar;
+                    jarEvent.packages = packages;
+                    jarEvent.classes = classes;
+                    jarEvent.edges = edges;
+                    jarEvent.bytesRead = bytes;
+                    jarEvent.classesLoaded = classFiles;
+                } else {
+                    PhaseEvent phaseEvent = (PhaseEvent) event;
+                    phaseEvent.phase = phase.name();
+                    phaseEvent.jar = jar;
+                    phaseEvent.packages = packages;
+                    phaseEvent.classes = classes;
+                    phaseEvent.edges = edges;
+                    phaseEvent.bytesRead = bytes;
+                }
+                event.commit();
+            }
+        }
+    }
+
+    // Immutable copy of the counters at one point in time
+    public static class Snapshot {
+        private final Map<Phase, Long> phaseNanos;
+        private final Map<Phase, Integer> phaseCounts;
+        private final int jars;
+        private final long bytesRead;
+        private final long classesLoaded;
+        private final int peakPackages;
+        private final int peakClasses;
+        private final long peakEdges;
+
+        private Snapshot(AnalysisMetrics metrics) {
+            phaseNanos = Collections.unmodifiableMap(new EnumMap<>(metrics.phaseNanos));
+            phaseCounts = Collections.unmodifiableMap(new EnumMap<>(metrics.phaseCounts));
+            jars = metrics.jars;
+            bytesRead = metrics.bytesRead;
+            classesLoaded = metrics.classesLoaded;
+            peakPackages = metrics.peakPackages;
+            peakClasses = metrics.peakClasses;
+            peakEdges = metrics.peakEdges;
+        }
+
+        // Total time of the phase over all its runs, 0 when it never ran
+        public long getPhaseNanos(Phase phase) {
+            return phaseNanos.getOrDefault(phase, 0L);
+        }
+
+        public int getPhaseCount(Phase phase) {
+            return phaseCounts.getOrDefault(phase, 0);
+        }
+
+        public int getJars() {
+            return jars;
+        }
+
+        // Bytes of XML and class files read, including JDK classes looked up by name
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getClassesLoaded() {
+            return classesLoaded;
+        }
+
+        // The largest model seen so far, after any single JAR
+        public int getPeakPackages() {
+            return peakPackages;
+        }
+
+        public int getPeakClasses() {
+            return peakClasses;
+        }
+
+        public long getPeakEdges() {
+            return peakEdges;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("=== Metrics ===\n");
+            for (Phase phase : Phase.values()) {
+                if (getPhaseCount(phase) > 0) {
+                    text.append(String.format("%-18s %8.1f ms  (%d)%n",
+                            phase.name().toLowerCase().replace('_', ' '), getPhaseNanos(phase) / 1e6, getPhaseCount(phase)));
+                }
+            }
+            text.append(String.format("%-18s %8d%n", "JARs", jars));
+            text.append(String.format("%-18s %8.1f KB%n", "bytes read", bytesRead / 1024.0));
+            text.append(String.format("%-18s %8d%n", "class files read", classesLoaded));
+            text.append(String.format("%-18s %d packages, %d classes, %d edges%n", "peak model", peakPackages, peakClasses, peakEdges));
+            return text.toString();
+        }
+    }
+
+    // Times one phase; use in try-with-resources. jar may be null for phases without one.
+    public Timer start(Phase phase, String jar) {
+        return new Timer(Objects.requireNonNull(phase), jar);
+    }
+
+    // Times the whole analysis of one JAR
+    public Timer startJar(String jar) {
+        return new Timer(null, jar);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    public synchronized void reset() {
+        phaseNanos.clear();
+        phaseCounts.clear();
+        jars = 0;
+        bytesRead = 0;
+        classesLoaded = 0;
+        peakPackages = 0;
+        peakClasses = 0;
+        peakEdges = 0;
+    }
+
+    private synchronized void record(Phase phase, long nanos, Timer timer) {
+        if (phase != null) {
+            phaseNanos.merge(phase, nanos, Long::sum);
+            phaseCounts.merge(phase, 1, Integer::sum);
+            return;
+        }
+        // Bytes and class files are counted once per JAR, not again for each of its phases
+        jars++;
+        bytesRead += timer.bytes;
+        classesLoaded += timer.classFiles;
+        peakPackages = Math.max(peakPackages, timer.packages);
+        peakClasses = Math.max(peakClasses, timer.classes);
+        peakEdges = Math.max(peakEdges, timer.edges);
+    }
+}
@@ -0,0 +1,563 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Non-interactive mode for build servers: analyzes many JARs on a fixed number of workers and
+// writes one diagram set per JAR into <output>/<jar name>/. Each worker runs a whole JAR
+// (analysis, generation, rendering) on its own parser, so at most --jobs models are in memory.
+// A --classpath is analyzed as one model and gets one diagram set, <output>/classpath/.
+// With --partition only partitions of the model are rendered (see DiagramPartitioning), on a
+// pool of --jobs render workers, with an overview diagram and an index.html linking them.
+// With --shards a class path is analyzed by separate processes whose partial models are merged
+// (see ShardedAnalysis); their files stay in <output>/<name>/shards/.
+//
+// Besides the diagrams, each directory gets concrete-dependencies.txt, package-cycles.txt and
+// unresolved-classes.txt when there is something to report, and with --save-model the model
+// itself as model.cdm (see ModelFile), which the GUI opens without analyzing again.
+//
+// Exit codes: 0 all fine, 1 concrete-dependency violations found, 2 a JAR could not be processed,
+// 64 bad command line.
+public class BatchAnalyzer {
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_VIOLATIONS = 1;
+    public static final int EXIT_FAILURES = 2;
+    public static final int EXIT_USAGE = 64;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: DependencyParser --batch [options] <jar | directory | @list-file>...",
+            "  --out <dir>          output directory (default: diagrams)",
+            "  --mode <mode>        all, white-box, gray-box or black-box (default: all)",
+            "  --level <n>          gray-box level; without it every level is generated",
+            "  --format <format>    png, svg or none to write only the .puml files (default: png)",
+            "  --jobs <n>           JARs analyzed at the same time (default: available processors)",
+            "  --classpath <path>   JARs and class directories, separated by " + File.pathSeparator + ", analyzed as one model",
+            "  --partition <n>      render diagrams of at most n components each, plus an overview and index.html",
+            "  --shards <n>         analyze each class path in n processes and merge their models",
+            "  --save-model         also write the analyzed model to model." + ModelFile.EXTENSION + " for the GUI",
+            "  --no-cache           do not read or write the analysis cache");
+
+    private final List<File> jars = new ArrayList<>();
+    private final List<List<File>> classpaths = new ArrayList<>();
+    // What the workers analyze: every JAR on its own, then every class path
+    private final List<List<File>> units = new ArrayList<>();
+    private Path outputDirectory = Paths.get("diagrams");
+    private UMLGenerator.VisualizationMode mode;
+    private int grayBoxLevel = -1;
+    private DiagramRenderer.OutputFormat format = DiagramRenderer.OutputFormat.PNG;
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private boolean useCache = true;
+    private int partitionSize = -1;
+    private boolean saveModel;
+    private int shardCount = 1;
+    // Renders the partitions of all workers while --partition is set
+    private ExecutorService renderPool;
+    // Shared by the parsers of all workers, printed after the summary
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+    // Outcome and timings of one JAR or class path
+    public static class JarResult {
+        private final int index;
+        private final List<File> classpath;
+        private int classes;
+        private int violations;
+        private int unresolved;
+        private int cycles;
+        private long analyzeNanos;
+        private long generateNanos;
+        private long renderNanos;
+        private Exception failure;
+
+        JarResult(int index, List<File> classpath) {
+            this.index = index;
+            this.classpath = classpath;
+        }
+
+        // A single JAR unless a class path was analyzed
+        public List<File> getClasspath() {
+            return classpath;
+        }
+
+        public String getName() {
+            String name = classpath.get(0).getName();
+            return classpath.size() == 1 ? name : name + " +" + (classpath.size() - 1);
+        }
+
+        public int getClasses() {
+            return classes;
+        }
+
+        // Number of components with dependencies on concrete classes
+        public int getViolations() {
+            return violations;
+        }
+
+        // Number of package dependency cycles
+        public int getCycles() {
+            return cycles;
+        }
+
+        // Referenced classes found neither in the analyzed JARs nor in the JDK
+        public int getUnresolved() {
+            return unresolved;
+        }
+
+        public long getTotalNanos() {
+            return analyzeNanos + generateNanos + renderNanos;
+        }
+
+        public Exception getFailure() {
+            return failure;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    public static int run(String[] args) {
+        BatchAnalyzer batch = new BatchAnalyzer();
+        try {
+            batch.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        return batch.execute();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--out":
+                    outputDirectory = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--mode":
+                    String modeName = value(args, ++i, arg);
+                    mode = modeName.equals("all") ? null : parseMode(modeName);
+                    break;
+                case "--level":
+                    grayBoxLevel = positive(value(args, ++i, arg), arg);
+                    break;
+                case "--format":
+                    String formatName = value(args, ++i, arg);
+                    format = formatName.equals("none") ? null : parseFormat(formatName);
+                    break;
+                case "--jobs":
+                    jobs = positive(value(args, ++i, arg), arg);
+                    break;
+                case "--classpath":
+                    addClasspath(value(args, ++i, arg));
+                    break;
+                case "--partition":
+                    partitionSize = positive(value(args, ++i, arg), arg);
+                    break;
+                case "--shards":
+                    shardCount = positive(value(args, ++i, arg), arg);
+                    break;
+                case "--save-model":
+                    saveModel = true;
+                    break;
+                case "--no-cache":
+                    useCache = false;
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    addJars(arg);
+            }
+        }
+        if (jars.isEmpty() && classpaths.isEmpty()) {
+            throw new IllegalArgumentException("No JAR files given");
+        }
+        // A JAR named twice, e.g. in a directory and a list, is analyzed once
+        for (File jar : new LinkedHashSet<>(jars)) {
+            units.add(List.of(jar));
+        }
+        units.addAll(classpaths);
+        if (grayBoxLevel != -1 && mode != UMLGenerator.VisualizationMode.GRAY_BOX) {
+            throw new IllegalArgumentException("--level requires --mode gray-box");
+        }
+    }
+
+    // A directory contributes its *.jar files, @file every non-empty line of the file
+    private void addJars(String arg) {
+        try {
+            if (arg.startsWith("@")) {
+                for (String line : Files.readAllLines(Paths.get(arg.substring(1)), StandardCharsets.UTF_8)) {
+                    if (!line.isBlank() && !line.startsWith("#")) {
+                        addJars(line.trim());
+                    }
+                }
+            } else if (new File(arg).isDirectory()) {
+                try (Stream<Path> files = Files.list(Paths.get(arg))) {
+                    files.filter(file -> file.getFileName().toString().endsWith(".jar"))
+                            .sorted()
+                            .forEach(file -> jars.add(file.toFile()));
+                }
+            } else {
+                jars.add(new File(arg));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read " + arg + ": " + e.getMessage());
+        }
+    }
+
+    // Unlike the JAR arguments, a directory here is a class directory, as for java -cp
+    private void addClasspath(String path) {
+        Set<File> entries = new LinkedHashSet<>();
+        for (String entry : path.split(Pattern.quote(File.pathSeparator))) {
+            if (!entry.isBlank()) {
+                entries.add(new File(entry.trim()));
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("Empty class path");
+        }
+        classpaths.add(List.copyOf(entries));
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    private static int positive(String value, String option) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 1) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " must be a positive number: " + value);
+    }
+
+    private static UMLGenerator.VisualizationMode parseMode(String name) {
+        try {
+            return UMLGenerator.VisualizationMode.valueOf(name.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown mode: " + name);
+        }
+    }
+
+    private static DiagramRenderer.OutputFormat parseFormat(String name) {
+        try {
+            return DiagramRenderer.OutputFormat.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format: " + name);
+        }
+    }
+
+    private int execute() {
+        EmbeddedPlantUMLRenderer renderer = null;
+        if (format != null) {
+            renderer = DiagramRendererFactory.getEmbeddedRenderer();
+            try {
+                // Fail once up front instead of once per JAR when PlantUML is missing
+                renderer.warmUp();
+            } catch (IOException e) {
+                System.err.println("Cannot render diagrams: " + e.getMessage() + " (use --format none to skip rendering)");
+                return EXIT_FAILURES;
+            }
+        }
+        AnalysisCache cache = useCache ? new AnalysisCache(AnalysisCache.defaultDirectory()) : null;
+        UMLGenerator generator = UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML);
+        List<Path> directories = outputDirectories();
+
+        System.out.println("Analyzing " + units.size() + " JARs with " + jobs + " workers");
+        long start = System.nanoTime();
+        List<JarResult> results = new ArrayList<>(units.size());
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        // Separate from the JAR workers, which wait for their partitions
+        renderPool = partitionSize > 0 && renderer != null ? Executors.newFixedThreadPool(jobs) : null;
+        try {
+            CompletionService<JarResult> completion = new ExecutorCompletionService<>(executor);
+            DiagramRenderer jarRenderer = renderer;
+            for (int i = 0; i < units.size(); i++) {
+                JarResult result = new JarResult(i, units.get(i));
+                Path directory = directories.get(i);
+                completion.submit(() -> process(result, directory, cache, generator, jarRenderer));
+            }
+            for (int done = 1; done <= units.size(); done++) {
+                JarResult result = completion.take().get();
+                results.add(result);
+                System.out.println("[" + done + "/" + units.size() + "] " + result.getName() + " "
+                        + millis(result.getTotalNanos()) + " ms"
+                        + (result.failure != null ? " FAILED: " + result.failure : ""));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Batch interrupted");
+            return EXIT_FAILURES;
+        } catch (ExecutionException e) {
+            // process() reports its own failures, so this is a bug
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (renderPool != null) {
+                renderPool.shutdownNow();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Report in the order the JARs were given
+        List<JarResult> ordered = new ArrayList<>(results);
+        ordered.sort(Comparator.comparingInt(result -> result.index));
+        printSummary(ordered, elapsed);
+
+        if (ordered.stream().anyMatch(r -> r.failure != null)) {
+            return EXIT_FAILURES;
+        }
+        return ordered.stream().anyMatch(r -> r.violations > 0) ? EXIT_VIOLATIONS : EXIT_OK;
+    }
+
+    // One directory per JAR, named after the JAR, and one named classpath per class path;
+    // equal names get a suffix. Parallel to units.
+    private List<Path> outputDirectories() {
+        List<Path> directories = new ArrayList<>();
+        Set<String> used = new HashSet<>();
+        int firstClasspath = units.size() - classpaths.size();
+        for (int i = 0; i < units.size(); i++) {
+            String jarName = units.get(i).get(0).getName();
+            String base = i >= firstClasspath ? "classpath"
+                    : jarName.endsWith(".jar") ? jarName.substring(0, jarName.length() - 4) : jarName;
+            String name = base;
+            for (int n = 2; !used.add(name); n++) {
+                name = base + "-" + n;
+            }
+            directories.add(outputDirectory.resolve(name));
+        }
+        return directories;
+    }
+
+    private JarResult process(JarResult result, Path directory, AnalysisCache cache, UMLGenerator generator, DiagramRenderer renderer) {
+        try {
+            long start = System.nanoTime();
+            DependencyParser parser = new DependencyParser();
+            parser.setMetrics(metrics);
+            if (cache != null) {
+                parser.setAnalysisCache(cache);
+            }
+            if (shardCount > 1 && result.classpath.size() > 1) {
+                Path shardDirectory = directory.resolve("shards");
+                Path merged = shardDirectory.resolve("merged." + ModelFile.EXTENSION);
+                ModelMerge.Result merge = ShardedAnalysis.analyze(result.classpath, shardCount, jobs, shardDirectory, merged);
+                System.out.println(result.getName() + ": merged " + merge);
+                parser.loadModel(merged);
+            } else {
+                parser.analyzeClasspath(result.classpath);
+            }
+            Files.createDirectories(directory);
+            result.unresolved = writeLines(parser.getUnresolvedClasses(), directory.resolve("unresolved-classes.txt"));
+            if (saveModel) {
+                parser.saveModel(directory.resolve("model." + ModelFile.EXTENSION));
+            }
+            ModelSnapshot snapshot = parser.snapshot();
+            for (Component component : snapshot.getComponentList()) {
+                result.classes += component.getComposedPartIds().size();
+            }
+            long analyzed = System.nanoTime();
+            result.analyzeNanos = analyzed - start;
+
+            Map<UMLGenerator.View, String> umlTexts;
+            Map<Path, String> partitionTexts = null;
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.GENERATE, result.getName())) {
+                List<UMLGenerator.View> views = selectViews(snapshot.getGlobalMaxDepth());
+                umlTexts = generator.generateViews(snapshot, views);
+                for (Map.Entry<UMLGenerator.View, String> entry : umlTexts.entrySet()) {
+                    Files.writeString(directory.resolve(entry.getKey() + ".puml"), entry.getValue(), StandardCharsets.UTF_8);
+                }
+                if (partitionSize > 0) {
+                    partitionTexts = writePartitions(result.getName(), snapshot, views, directory, generator);
+                }
+                result.violations = writeViolations(snapshot, directory.resolve("concrete-dependencies.txt"));
+                timer.model(snapshot.getComponentList());
+            }
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CYCLES, result.getName())) {
+                PackageCycles cycles = snapshot.getPackageCycles();
+                writeLines(cycles.report(), directory.resolve("package-cycles.txt"));
+                result.cycles = cycles.getCycles().size();
+                timer.model(snapshot.getComponentList());
+            }
+            long generated = System.nanoTime();
+            result.generateNanos = generated - analyzed;
+
+            if (renderer != null) {
+                try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.RENDER, result.getName())) {
+                    if (partitionTexts != null) {
+                        for (Map.Entry<Path, byte[]> image : renderer.renderAll(partitionTexts, format, renderPool).entrySet()) {
+                            Files.write(Paths.get(image.getKey() + "." + format.getExtension()), image.getValue());
+                        }
+                    } else {
+                        for (Map.Entry<UMLGenerator.View, String> entry : umlTexts.entrySet()) {
+                            Files.write(directory.resolve(entry.getKey() + "." + format.getExtension()),
+                                    renderer.render(entry.getValue(), format));
+                        }
+                    }
+                    timer.model(snapshot.getComponentList());
+                }
+                result.renderNanos = System.nanoTime() - generated;
+            }
+        } catch (Exception e) {
+            result.failure = e;
+        }
+        return result;
+    }
+
+    // The requested views, with the gray-box level clamped to 1..globalMaxDepth - 1 like the interactive mode
+    private List<UMLGenerator.View> selectViews(int globalMaxDepth) {
+        if (mode == null) {
+            return UMLGenerator.View.allViews(globalMaxDepth);
+        }
+        if (mode != UMLGenerator.VisualizationMode.GRAY_BOX) {
+            return List.of(new UMLGenerator.View(mode, 0));
+        }
+        int maxAllowedLevel = Math.max(1, globalMaxDepth - 1);
+        if (grayBoxLevel != -1) {
+            return List.of(new UMLGenerator.View(mode, Math.min(grayBoxLevel, maxAllowedLevel)));
+        }
+        List<UMLGenerator.View> views = new ArrayList<>();
+        for (int level = 1; level <= maxAllowedLevel; level++) {
+            views.add(new UMLGenerator.View(mode, level));
+        }
+        return views;
+    }
+
+    // Writes overview.puml, partitions/<partition>.<view>.puml and index.html. Returns the
+    // diagrams to render, keyed by their path without the extension.
+    private Map<Path, String> writePartitions(String title, ModelSnapshot snapshot, List<UMLGenerator.View> views,
+                                              Path directory, UMLGenerator generator) throws IOException {
+        DiagramPartitioning partitioning = DiagramPartitioning.of(snapshot, partitionSize);
+        Path partitionDirectory = directory.resolve("partitions");
+        Files.createDirectories(partitionDirectory);
+        Map<Path, String> umlTexts = new LinkedHashMap<>();
+        umlTexts.put(directory.resolve("overview"),
+                generator.generateOverview(partitioning, partition -> "index.html#" + partition.getFileName()));
+        for (DiagramPartitioning.Partition partition : partitioning.getPartitions()) {
+            for (Map.Entry<UMLGenerator.View, String> entry : generator.generatePartitionViews(partitioning, partition, views).entrySet()) {
+                umlTexts.put(partitionDirectory.resolve(partition.getFileName() + "." + entry.getKey()), entry.getValue());
+            }
+        }
+        for (Map.Entry<Path, String> entry : umlTexts.entrySet()) {
+            Files.writeString(Paths.get(entry.getKey() + ".puml"), entry.getValue(), StandardCharsets.UTF_8);
+        }
+        Files.writeString(directory.resolve("index.html"), partitionIndex(title, partitioning, views), StandardCharsets.UTF_8);
+        return umlTexts;
+    }
+
+    // The overview followed by a table with a row per partition and a link per view
+    private String partitionIndex(String title, DiagramPartitioning partitioning, List<UMLGenerator.View> views) {
+        String extension = format != null ? format.getExtension() : "puml";
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"utf-8\"><title>").append(escapeHtml(title))
+                .append("</title></head>\n<body>\n<h1>").append(escapeHtml(title)).append("</h1>\n");
+        if (format == DiagramRenderer.OutputFormat.SVG) {
+            // An object rather than an img, so the links of the overview work
+            html.append("<object type=\"image/svg+xml\" data=\"overview.svg\"></object>\n");
+        } else if (format != null) {
+            html.append("<img src=\"overview.").append(extension).append("\" alt=\"Overview\">\n");
+        } else {
+            html.append("<p><a href=\"overview.puml\">Overview</a></p>\n");
+        }
+        html.append("<table>\n<tr><th>Partition</th><th>Components</th>");
+        for (UMLGenerator.View view : views) {
+            html.append("<th>").append(view).append("</th>");
+        }
+        html.append("</tr>\n");
+        for (DiagramPartitioning.Partition partition : partitioning.getPartitions()) {
+            html.append("<tr id=\"").append(escapeHtml(partition.getFileName())).append("\"><td>")
+                    .append(escapeHtml(partition.getName())).append("</td><td>")
+                    .append(partition.getComponents().size()).append("</td>");
+            for (UMLGenerator.View view : views) {
+                html.append("<td><a href=\"partitions/").append(escapeHtml(partition.getFileName())).append('.').append(view)
+                        .append('.').append(extension).append("\">").append(extension).append("</a></td>");
+            }
+            html.append("</tr>\n");
+        }
+        return html.append("</table>\n</body>\n</html>\n").toString();
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    // Same content as DependencyParser.generateBadDesignReport, one file per JAR. Returns the
+    // number of components listed; without violations no file is left behind.
+    private static int writeViolations(ModelSnapshot snapshot, Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Component component : snapshot.getComponentList()) {
+            if (!component.getConcreteDependencyIds().isEmpty()) {
+                lines.add("Component " + component.getName() + " has concrete dependencies on: "
+                        + new TreeSet<>(component.getConcreteDependencies()));
+            }
+        }
+        return writeLines(lines, file);
+    }
+
+    // Writes one line per element, or removes the file when there is nothing to report
+    private static int writeLines(Collection<String> lines, Path file) throws IOException {
+        if (lines.isEmpty()) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        }
+        return lines.size();
+    }
+
+    private void printSummary(List<JarResult> results, long elapsedNanos) {
+        System.out.println();
+        System.out.println("=== Batch summary ===");
+        System.out.println(String.format("%-40s %8s %10s %10s %10s %10s  %s",
+                "JAR", "classes", "analyze", "generate", "render", "total", "status"));
+        int classes = 0;
+        int failed = 0;
+        int withViolations = 0;
+        for (JarResult result : results) {
+            String status;
+            if (result.failure != null) {
+                status = "FAILED: " + result.failure;
+                failed++;
+            } else if (result.violations > 0) {
+                status = result.violations + " components with concrete dependencies";
+                withViolations++;
+            } else {
+                status = "ok";
+            }
+            if (result.failure == null && result.cycles > 0) {
+                status += ", " + result.cycles + " package cycles";
+            }
+            if (result.failure == null && result.unresolved > 0) {
+                status += ", " + result.unresolved + " classes not found";
+            }
+            classes += result.classes;
+            System.out.println(String.format("%-40s %8d %8d ms %8d ms %8d ms %8d ms  %s",
+                    result.getName(), result.classes, millis(result.analyzeNanos), millis(result.generateNanos),
+                    millis(result.renderNanos), millis(result.getTotalNanos()), status));
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("%d JARs, %d classes in %.2f s on %d workers: %.2f JARs/s, %.0f classes/s",
+                results.size(), classes, seconds, jobs, results.size() / seconds, classes / seconds));
+        System.out.println((results.size() - failed - withViolations) + " ok, " + withViolations
+                + " with concrete dependencies, " + failed + " failed");
+        System.out.println("Diagrams written to " + outputDirectory.toAbsolutePath());
+        System.out.println();
+        // Phase times are summed over the workers, so they exceed the wall-clock time
+        System.out.print(metrics.snapshot());
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,63 @@
+package main;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Facts about a class decoded straight from its class file, without defining it in the JVM.
+public class ClassFileInfo {
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+
+    private final String name;
+    private final int accessFlags;
+    private final String superName;
+    private final List<String> interfaceNames;
+    private final Set<String> dependencies;
+
+    public ClassFileInfo(String name, int accessFlags, String superName, List<String> interfaceNames) {
+        this(name, accessFlags, superName, interfaceNames, Set.of());
+    }
+
+    public ClassFileInfo(String name, int accessFlags, String superName, List<String> interfaceNames, Set<String> dependencies) {
+        this.name = name;
+        this.accessFlags = accessFlags;
+        this.superName = superName;
+        this.interfaceNames = List.copyOf(interfaceNames);
+        // Constant pool order, so the order in which an analysis interns names is the same every run
+        this.dependencies = Collections.unmodifiableSet(new LinkedHashSet<>(dependencies));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAccessFlags() {
+        return accessFlags;
+    }
+
+    // Null for java.lang.Object and module-info
+    public String getSuperName() {
+        return superName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    // Classes referenced from the constant pool and member descriptors, excluding the class itself.
+    // Empty when only the header was read.
+    public Set<String> getDependencies() {
+        return dependencies;
+    }
+
+    public boolean isInterface() {
+        return (accessFlags & ACC_INTERFACE) != 0;
+    }
+
+    // Interfaces carry ACC_ABSTRACT as well, matching Modifier.isAbstract on a loaded Class
+    public boolean isAbstract() {
+        return (accessFlags & ACC_ABSTRACT) != 0;
+    }
+}
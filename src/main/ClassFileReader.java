@@ -0,0 +1,201 @@
+package main;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Minimal class file decoder (JVMS chapter 4). Only the constant pool and the header
+// are interpreted; nothing is ever handed to a class loader.
+public class ClassFileReader {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private ClassFileReader() {
+    }
+
+    // Reads access flags, this class, super class and direct interfaces.
+    public static ClassFileInfo readHeader(InputStream in) throws IOException {
+        return read(in, false);
+    }
+
+    // Reads the header plus every class the class file refers to: class constants, field and
+    // method descriptors of the members, and the descriptors of referenced members.
+    public static ClassFileInfo readWithDependencies(InputStream in) throws IOException {
+        return read(in, true);
+    }
+
+    private static ClassFileInfo read(InputStream in, boolean withDependencies) throws IOException {
+        DataInputStream data = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        data.readUnsignedShort(); // minor version
+        data.readUnsignedShort(); // major version
+
+        ConstantPool pool = ConstantPool.read(data);
+
+        int accessFlags = data.readUnsignedShort();
+        String name = pool.className(data.readUnsignedShort());
+        int superIndex = data.readUnsignedShort();
+        String superName = superIndex == 0 ? null : pool.className(superIndex);
+
+        int interfaceCount = data.readUnsignedShort();
+        List<String> interfaces = new ArrayList<>(interfaceCount);
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces.add(pool.className(data.readUnsignedShort()));
+        }
+        if (!withDependencies) {
+            return new ClassFileInfo(name, accessFlags, superName, interfaces);
+        }
+
+        Set<String> dependencies = new LinkedHashSet<>();
+        readMemberDescriptors(data, pool, dependencies); // fields
+        readMemberDescriptors(data, pool, dependencies); // methods
+
+        for (int i = 1; i < pool.tags.length; i++) {
+            switch (pool.tags[i]) {
+                case CONSTANT_CLASS:
+                    String internalName = pool.utf8(((int[]) pool.values[i])[0]);
+                    if (internalName.startsWith("[")) {
+                        addDescriptorTypes(internalName, dependencies);
+                    } else {
+                        dependencies.add(toBinaryName(internalName));
+                    }
+                    break;
+                case CONSTANT_NAME_AND_TYPE:
+                    addDescriptorTypes(pool.utf8(((int[]) pool.values[i])[1]), dependencies);
+                    break;
+                case CONSTANT_METHOD_TYPE:
+                    addDescriptorTypes(pool.utf8(((int[]) pool.values[i])[0]), dependencies);
+                    break;
+                default:
+                    break;
+            }
+        }
+        dependencies.remove(name);
+        return new ClassFileInfo(name, accessFlags, superName, interfaces, dependencies);
+    }
+
+    private static void readMemberDescriptors(DataInputStream data, ConstantPool pool, Set<String> dependencies) throws IOException {
+        int memberCount = data.readUnsignedShort();
+        for (int i = 0; i < memberCount; i++) {
+            data.readUnsignedShort(); // access flags
+            data.readUnsignedShort(); // name
+            addDescriptorTypes(pool.utf8(data.readUnsignedShort()), dependencies);
+            skipAttributes(data);
+        }
+    }
+
+    private static void skipAttributes(DataInputStream data) throws IOException {
+        int attributeCount = data.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            data.readUnsignedShort(); // name
+            data.skipNBytes(data.readInt() & 0xFFFFFFFFL);
+        }
+    }
+
+    // Collects the object types of a field or method descriptor, e.g. (I[Ljava/lang/String;)La/B;
+    // Primitive types and primitive arrays are skipped, object arrays count as their element type.
+    static void addDescriptorTypes(String descriptor, Set<String> types) {
+        int i = 0;
+        while (i < descriptor.length()) {
+            if (descriptor.charAt(i) == 'L') {
+                int end = descriptor.indexOf(';', i);
+                if (end < 0) {
+                    return;
+                }
+                types.add(toBinaryName(descriptor.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // Converts an internal name (a/b/C$D) into the binary name returned by Class.getName()
+    static String toBinaryName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    static class ConstantPool {
+        final int[] tags;
+        final Object[] values;   // Utf8 strings, or int[] holding the referenced indexes
+
+        private ConstantPool(int count) {
+            tags = new int[count];
+            values = new Object[count];
+        }
+
+        static ConstantPool read(DataInputStream data) throws IOException {
+            int count = data.readUnsignedShort();
+            ConstantPool pool = new ConstantPool(count);
+            for (int i = 1; i < count; i++) {
+                int tag = data.readUnsignedByte();
+                pool.tags[i] = tag;
+                switch (tag) {
+                    case CONSTANT_UTF8:
+                        pool.values[i] = data.readUTF();
+                        break;
+                    case CONSTANT_CLASS:
+                    case CONSTANT_STRING:
+                    case CONSTANT_METHOD_TYPE:
+                    case CONSTANT_MODULE:
+                    case CONSTANT_PACKAGE:
+                        pool.values[i] = new int[]{ data.readUnsignedShort() };
+                        break;
+                    case CONSTANT_FIELDREF:
+                    case CONSTANT_METHODREF:
+                    case CONSTANT_INTERFACE_METHODREF:
+                    case CONSTANT_NAME_AND_TYPE:
+                    case CONSTANT_DYNAMIC:
+                    case CONSTANT_INVOKE_DYNAMIC:
+                        pool.values[i] = new int[]{ data.readUnsignedShort(), data.readUnsignedShort() };
+                        break;
+                    case CONSTANT_METHOD_HANDLE:
+                        pool.values[i] = new int[]{ data.readUnsignedByte(), data.readUnsignedShort() };
+                        break;
+                    case CONSTANT_INTEGER:
+                    case CONSTANT_FLOAT:
+                        data.skipNBytes(4);
+                        break;
+                    case CONSTANT_LONG:
+                    case CONSTANT_DOUBLE:
+                        // 8-byte constants take up two entries
+                        data.skipNBytes(8);
+                        i++;
+                        break;
+                    default:
+                        throw new IOException("Unknown constant pool tag " + tag + " at index " + i);
+                }
+            }
+            return pool;
+        }
+
+        String utf8(int index) {
+            return (String) values[index];
+        }
+
+        String className(int index) {
+            return toBinaryName(utf8(((int[]) values[index])[0]));
+        }
+    }
+}
@@ -5,26 +5,43 @@ import java.util.*;
 public class Component {
     private String name;
     private int depth;
-    private Set<String> composedParts = new HashSet<>();
-    private Set<String> providedInterfaces = new HashSet<>();
-    private Set<String> requiredInterfaces = new HashSet<>();
-    private Set<String> concreteDependencies = new HashSet<>();
+    // Set on the copies held by a ModelSnapshot; every modification then throws
+    private boolean frozen;
+
+    // Relations hold symbol ids of the analysis' table instead of full class names
+    private final SymbolTable symbols;
+    private final IntSet composedParts = new IntSet();
+    private final IntSet providedInterfaces = new IntSet();
+    private final IntSet requiredInterfaces = new IntSet();
+    private final IntSet concreteDependencies = new IntSet();
 
     // Track sub-packages
     private Map<String, Component> subPackages = new HashMap<>();
 
     // Track class-to-interface implementations
-    private Map<String, Set<String>> classImplementations = new HashMap<>();
+    private Map<Integer, IntSet> classImplementations = new HashMap<>();
+
+    // Only filled by shard analyses: classes referenced from this package and superclasses of its
+    // classes that were not on the shard's class path. ModelMerge resolves them against the
+    // other shards.
+    private final IntSet unresolvedReferences = new IntSet();
+    private final Map<Integer, Integer> unresolvedSuperclasses = new HashMap<>();
 
-    public Component(String name) {
+    public Component(String name, SymbolTable symbols) {
         this.name = name;
+        this.symbols = symbols;
     }
 
     public String getName() {
         return name;
     }
 
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
     public void setDepth(int depth) {
+        checkModifiable();
         this.depth = depth;
     }
 
@@ -33,6 +50,7 @@ public class Component {
     }
 
     public void addSubPackage(String subPackageName, Component subComponent) {
+        checkModifiable();
         subPackages.put(subPackageName, subComponent);
     }
 
@@ -40,27 +58,282 @@ public class Component {
         return subPackages;
     }
 
+    public void removeSubPackage(String subPackageName) {
+        checkModifiable();
+        subPackages.remove(subPackageName);
+    }
+
+    // The Set<String> getters are live views over the id sets below
     public Set<String> getComposedParts() {
-        return composedParts;
+        return new SymbolSet(composedParts);
     }
 
     public Set<String> getProvidedInterfaces() {
-        return providedInterfaces;
+        return new SymbolSet(providedInterfaces);
     }
 
     public Set<String> getRequiredInterfaces() {
-        return requiredInterfaces;
+        return new SymbolSet(requiredInterfaces);
     }
 
     public Set<String> getConcreteDependencies() {
+        return new SymbolSet(concreteDependencies);
+    }
+
+    public IntSet getComposedPartIds() {
+        return composedParts;
+    }
+
+    public IntSet getProvidedInterfaceIds() {
+        return providedInterfaces;
+    }
+
+    public IntSet getRequiredInterfaceIds() {
+        return requiredInterfaces;
+    }
+
+    public IntSet getConcreteDependencyIds() {
         return concreteDependencies;
     }
 
     public void addClassImplementation(String className, String interfaceName) {
-        classImplementations.computeIfAbsent(className, k -> new HashSet<>()).add(interfaceName);
+        checkModifiable();
+        classImplementations.computeIfAbsent(symbols.intern(className), k -> new IntSet()).add(symbols.intern(interfaceName));
     }
 
+    // Read-only view keyed by class name; the value sets are live views
     public Map<String, Set<String>> getClassImplementations() {
+        return new AbstractMap<>() {
+            @Override
+            public Set<Entry<String, Set<String>>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, Set<String>>> iterator() {
+                        Iterator<Map.Entry<Integer, IntSet>> ids = classImplementations.entrySet().iterator();
+                        return new Iterator<>() {
+                            @Override
+                            public boolean hasNext() {
+                                return ids.hasNext();
+                            }
+
+                            @Override
+                            public Entry<String, Set<String>> next() {
+                                Map.Entry<Integer, IntSet> entry = ids.next();
+                                return new AbstractMap.SimpleImmutableEntry<>(symbols.getName(entry.getKey()), new SymbolSet(entry.getValue()));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return classImplementations.size();
+                    }
+                };
+            }
+        };
+    }
+
+    // Class symbol id -> ids of the interfaces or abstract classes it implements
+    public Map<Integer, IntSet> getClassImplementationIds() {
         return classImplementations;
     }
+
+    public void addUnresolvedReference(String className) {
+        checkModifiable();
+        unresolvedReferences.add(symbols.intern(className));
+    }
+
+    public IntSet getUnresolvedReferenceIds() {
+        return unresolvedReferences;
+    }
+
+    public void addUnresolvedSuperclass(String className, String superName) {
+        checkModifiable();
+        unresolvedSuperclasses.put(symbols.intern(className), symbols.intern(superName));
+    }
+
+    // Class symbol id -> symbol id of its superclass
+    public Map<Integer, Integer> getUnresolvedSuperclassIds() {
+        return unresolvedSuperclasses;
+    }
+
+    // Adds the classes, interfaces and dependencies of another component with the same name,
+    // e.g. one built by a different worker. Sub-packages are linked by the caller.
+    public void mergeFrom(Component other) {
+        checkModifiable();
+        depth = other.depth;
+        if (other.symbols == symbols) {
+            composedParts.addAll(other.composedParts);
+            providedInterfaces.addAll(other.providedInterfaces);
+            requiredInterfaces.addAll(other.requiredInterfaces);
+            concreteDependencies.addAll(other.concreteDependencies);
+            for (Map.Entry<Integer, IntSet> entry : other.classImplementations.entrySet()) {
+                classImplementations.computeIfAbsent(entry.getKey(), k -> new IntSet()).addAll(entry.getValue());
+            }
+            unresolvedReferences.addAll(other.unresolvedReferences);
+            unresolvedSuperclasses.putAll(other.unresolvedSuperclasses);
+        } else {
+            getComposedParts().addAll(other.getComposedParts());
+            getProvidedInterfaces().addAll(other.getProvidedInterfaces());
+            getRequiredInterfaces().addAll(other.getRequiredInterfaces());
+            getConcreteDependencies().addAll(other.getConcreteDependencies());
+            for (Map.Entry<String, Set<String>> entry : other.getClassImplementations().entrySet()) {
+                for (String interfaceName : entry.getValue()) {
+                    addClassImplementation(entry.getKey(), interfaceName);
+                }
+            }
+            other.unresolvedReferences.forEach(id -> addUnresolvedReference(other.symbols.getName(id)));
+            for (Map.Entry<Integer, Integer> entry : other.unresolvedSuperclasses.entrySet()) {
+                addUnresolvedSuperclass(other.symbols.getName(entry.getKey()), other.symbols.getName(entry.getValue()));
+            }
+        }
+    }
+
+    // Drops the classes, interfaces and dependencies but keeps the depth and the sub-packages,
+    // so that an incremental update can refill the component in place
+    public void clearContents() {
+        checkModifiable();
+        composedParts.clear();
+        providedInterfaces.clear();
+        requiredInterfaces.clear();
+        concreteDependencies.clear();
+        classImplementations.clear();
+        unresolvedReferences.clear();
+        unresolvedSuperclasses.clear();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // Copies the relations of this component into a frozen component interning into symbols.
+    // Sub-packages are linked by the caller through linkFrozenSubPackages.
+    Component frozenCopy(SymbolTable symbols) {
+        Component copy = new Component(name, symbols);
+        copy.depth = depth;
+        copyIds(composedParts, copy.composedParts, symbols);
+        copyIds(providedInterfaces, copy.providedInterfaces, symbols);
+        copyIds(requiredInterfaces, copy.requiredInterfaces, symbols);
+        copyIds(concreteDependencies, copy.concreteDependencies, symbols);
+        for (Map.Entry<Integer, IntSet> entry : classImplementations.entrySet()) {
+            IntSet interfaces = new IntSet();
+            copyIds(entry.getValue(), interfaces, symbols);
+            copy.classImplementations.put(translate(entry.getKey(), symbols), interfaces.freeze());
+        }
+        copy.composedParts.freeze();
+        copy.providedInterfaces.freeze();
+        copy.requiredInterfaces.freeze();
+        copy.concreteDependencies.freeze();
+        return copy;
+    }
+
+    // Puts the relations of a frozen copy in name order, rank giving each symbol id its position
+    // among the sorted names, so generated text does not depend on the order names were interned
+    void sortIds(int[] rank) {
+        composedParts.sortBy(rank);
+        providedInterfaces.sortBy(rank);
+        requiredInterfaces.sortBy(rank);
+        concreteDependencies.sortBy(rank);
+        List<Integer> classIds = new ArrayList<>(classImplementations.keySet());
+        classIds.sort(Comparator.comparingInt(id -> rank[id]));
+        Map<Integer, IntSet> sorted = new LinkedHashMap<>(classIds.size() * 2);
+        for (int classId : classIds) {
+            sorted.put(classId, classImplementations.get(classId).sortBy(rank));
+        }
+        classImplementations = sorted;
+    }
+
+    // Completes the frozen copy of this component: its sub-packages point at the other frozen
+    // copies in name order, and from then on nothing about it may change
+    void linkFrozenSubPackages(Map<String, Component> copies) {
+        Component copy = copies.get(name);
+        Map<String, Component> linked = new LinkedHashMap<>();
+        for (String subPackageName : new TreeSet<>(subPackages.keySet())) {
+            linked.put(subPackageName, copies.get(subPackageName));
+        }
+        copy.subPackages = Collections.unmodifiableMap(linked);
+        copy.classImplementations = Collections.unmodifiableMap(copy.classImplementations);
+        copy.frozen = true;
+    }
+
+    private void copyIds(IntSet from, IntSet to, SymbolTable target) {
+        if (target == symbols) {
+            to.addAll(from);
+        } else {
+            from.forEach(id -> to.add(target.intern(symbols.getName(id))));
+        }
+    }
+
+    private int translate(int id, SymbolTable target) {
+        return target == symbols ? id : target.intern(symbols.getName(id));
+    }
+
+    private void checkModifiable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Component " + name + " belongs to a snapshot and cannot be modified");
+        }
+    }
+
+    // Set<String> facade over an IntSet of symbol ids
+    private class SymbolSet extends AbstractSet<String> {
+        private final IntSet ids;
+
+        SymbolSet(IntSet ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean add(String name) {
+            return ids.add(symbols.intern(name));
+        }
+
+        @Override
+        public boolean contains(Object name) {
+            return ids.contains(symbols.lookup(name));
+        }
+
+        @Override
+        public boolean remove(Object name) {
+            return ids.remove(symbols.lookup(name));
+        }
+
+        @Override
+        public int size() {
+            return ids.size();
+        }
+
+        @Override
+        public void clear() {
+            ids.clear();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            int[] values = ids.toArray();
+            return new Iterator<>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                public String next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return symbols.getName(values[index++]);
+                }
+
+                @Override
+                public void remove() {
+                    if (index == 0) {
+                        throw new IllegalStateException();
+                    }
+                    ids.remove(values[index - 1]);
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Collects console output for the GUI without touching the FX thread. The stream turns bytes
+// into lines, decoding each complete line as UTF-8 so multi-byte characters survive, and the UI
+// takes the lines in batches through drain() at its own pace. Lines wait in a ring buffer of
+// fixed capacity: when more arrive between two drains, the oldest are dropped and counted.
+public class ConsoleBuffer {
+    private final String[] ring;
+    private int head;   // index of the oldest pending line
+    private int size;
+    private long dropped;
+    // Bytes of the line being written, up to its '\n'
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+    private final OutputStream stream = new OutputStream() {
+        @Override
+        public void write(int b) {
+            synchronized (ConsoleBuffer.this) {
+                if (b == '\n') {
+                    endLine();
+                } else {
+                    partial.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            synchronized (ConsoleBuffer.this) {
+                int start = off;
+                for (int i = off; i < off + len; i++) {
+                    if (b[i] == '\n') {
+                        partial.write(b, start, i - start);
+                        endLine();
+                        start = i + 1;
+                    }
+                }
+                partial.write(b, start, off + len - start);
+            }
+        }
+    };
+
+    public ConsoleBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.ring = new String[capacity];
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    // Wrap in a PrintStream with UTF-8 encoding, e.g. for System.setOut
+    public OutputStream getOutputStream() {
+        return stream;
+    }
+
+    // The complete lines written since the last drain, oldest first. If lines had to be
+    // dropped, the first element says how many.
+    public synchronized List<String> drain() {
+        List<String> lines = new ArrayList<>(size + 1);
+        if (dropped > 0) {
+            lines.add("... " + dropped + " lines dropped ...");
+            dropped = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            lines.add(ring[index]);
+            ring[index] = null;
+        }
+        head = 0;
+        size = 0;
+        return lines;
+    }
+
+    public synchronized void clear() {
+        drain();
+    }
+
+    private void endLine() {
+        String line = new String(partial.toByteArray(), StandardCharsets.UTF_8);
+        partial.reset();
+        if (line.endsWith("\r")) {
+            line = line.substring(0, line.length() - 1);
+        }
+        if (size == ring.length) {
+            ring[head] = line;
+            head = (head + 1) % ring.length;
+            dropped++;
+        } else {
+            ring[(head + size) % ring.length] = line;
+            size++;
+        }
+    }
+}
@@ -3,44 +3,615 @@ package main;
 import org.w3c.dom.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.*;
-import java.lang.reflect.*;
-import java.util.jar.JarFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarEntry;
+import java.util.zip.ZipEntry;
+import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class DependencyParser {
 
     private Map<String, Component> componentMap = new HashMap<>();
+    // Every component of this parser interns its class names here
+    private final SymbolTable symbols = new SymbolTable();
     private List<String> ignoreList = Arrays.asList("java.lang", "java.io", "java.util");
+    // Referenced classes that are neither on the analyzed class path nor in the JDK. Written by
+    // the fork/join workers of analyzeJar, so it has to be concurrent.
+    private final Set<String> unresolvedClasses = ConcurrentHashMap.newKeySet();
+    // What updateClasspath remembers between updates, null before the first one
+    private IncrementalState incremental;
+
+    // Number of worker threads used by analyzeJar, 1 keeps the analysis on the calling thread
+    private int parallelism = 1;
+    private AnalysisCache analysisCache;
+    // Set for shard analyses, see setKeepUnresolvedReferences
+    private boolean keepUnresolvedReferences;
+    private AnalysisMetrics metrics = new AnalysisMetrics();
+    // Class files per fork/join leaf task
+    private static final int CLASSES_PER_TASK = 256;
+
+    // Selects how the DependencyFinder XML is read: DOM keeps the original tree based
+    // parser, STAX reads the document in a single forward pass without building a tree.
+    public enum XmlParseMode { DOM, STAX }
 
     public void parseXML(File xmlFile, String jarFileName) throws Exception {
+        parseXML(xmlFile, jarFileName, XmlParseMode.STAX);
+    }
+
+    public void parseXML(File xmlFile, String jarFileName, XmlParseMode parseMode) throws Exception {
+        parseXML(xmlFile, List.of(new File(jarFileName)), parseMode);
+    }
+
+    // The XML may cover several JARs (DependencyExtractor accepts a whole class path); class
+    // kinds are then resolved against all of them at once
+    public void parseXML(File xmlFile, List<File> classpath, XmlParseMode parseMode) throws Exception {
+
+        // Class kinds are decoded from the class files in the JAR instead of loading every class
+        try (AnalysisMetrics.Timer jarTimer = metrics.startJar(describe(classpath));
+             JarClassIndex classIndex = new JarClassIndex(classpath, true)) {
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.XML_PARSE, jarTimer.getJar())) {
+                if (parseMode == XmlParseMode.DOM) {
+                    parseDocument(xmlFile, classIndex);
+                } else {
+                    parseStream(xmlFile, classIndex);
+                }
+                timer.model(componentMap.values()).bytesRead(xmlFile.length() + classIndex.getBytesRead());
+            } finally {
+                jarTimer.model(componentMap.values())
+                        .bytesRead(xmlFile.length() + classIndex.getBytesRead())
+                        .classesLoaded(classIndex.getClassesRead());
+            }
+        }
+    }
+
+    // Builds the model straight from the class files of the JAR, without DependencyFinder
+    // and without an intermediate XML file. Every class found in the JAR counts as confirmed.
+    public void analyzeJar(String jarFileName) throws IOException {
+        analyzeClasspath(List.of(new File(jarFileName)));
+    }
+
+    // Analyzes JARs and class directories as one application: the packages of all of them form
+    // one model, a package split over several JARs becomes one component, and references from
+    // one JAR into another resolve like references within a JAR. Where a class exists more than
+    // once, the first class path entry wins.
+    public void analyzeClasspath(List<File> classpath) throws IOException {
+        analyzeClasspath(classpath, 0);
+    }
+
+    // Analyzes the entries from firstAnalyzed on, behind the entries before it: those resolve
+    // references and hide classes of the same name, as they would in front of a whole class
+    // path, but add nothing to the model. This is how a shard analyzes its part of a class path.
+    public void analyzeClasspath(List<File> classpath, int firstAnalyzed) throws IOException {
+        try (AnalysisMetrics.Timer jarTimer = metrics.startJar(describe(classpath.subList(firstAnalyzed, classpath.size())));
+             JarClassIndex classIndex = new JarClassIndex(classpath, firstAnalyzed, true)) {
+            try {
+                analyzeClasspath(jarTimer.getJar(), classIndex);
+            } finally {
+                jarTimer.model(componentMap.values())
+                        .bytesRead(classIndex.getBytesRead())
+                        .classesLoaded(classIndex.getClassesRead());
+            }
+        }
+    }
+
+    // "app.jar" for one entry, "app.jar +2" for a class path of three
+    private static String describe(List<File> classpath) {
+        String name = classpath.get(0).getName();
+        return classpath.size() == 1 ? name : name + " +" + (classpath.size() - 1);
+    }
+
+    private void analyzeClasspath(String name, JarClassIndex classIndex) throws IOException {
+        List<JarEntry> entries = classIndex.getClassEntries();
+        if (classIndex.getShadowedClasses() > 0) {
+            System.out.println("Skipping " + classIndex.getShadowedClasses() + " class files hidden by an earlier class path entry");
+        }
+
+        String contentKey = null;
+        boolean cached = analysisCache != null && !keepUnresolvedReferences;
+        if (cached) {
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CACHE_LOAD, name)) {
+                contentKey = AnalysisCache.contentKey(entries);
+                AnalysisCache.CachedModel cachedModel = analysisCache.loadModel(contentKey, symbols);
+                if (cachedModel != null) {
+                    System.out.println("Loaded cached analysis for " + name);
+                    addModel(cachedModel.getComponents());
+                    unresolvedClasses.addAll(cachedModel.getUnresolvedClasses());
+                    timer.model(cachedModel.getComponents().values());
+                    return;
+                }
+            }
+        }
+
+        Map<File, Map<String, AnalysisCache.CachedClass>> previousClasses = new HashMap<>();
+        for (File root : classIndex.getRoots()) {
+            previousClasses.put(root, analysisCache != null ? analysisCache.loadClasses(root) : Collections.emptyMap());
+        }
+        if (cached && patchCachedModel(name, classIndex, contentKey, previousClasses)) {
+            return;
+        }
+
+        Map<String, Component> model;
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            List<ClassFileInfo> classes = new ArrayList<>(entries.size());
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CLASS_READ, name)) {
+                // Every class file is decoded before the model is built, so that a reference
+                // into a later class path entry finds the class already in the index
+                for (File root : classIndex.getRoots()) {
+                    classes.addAll(readClasses(root, classIndex.getClassEntries(root), previousClasses.get(root), classIndex, pool));
+                }
+                timer.bytesRead(classIndex.getBytesRead()).classesLoaded(classIndex.getClassesRead());
+            }
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.MODEL_BUILD, name)) {
+                if (pool == null) {
+                    model = new HashMap<>();
+                    addClasses(model, classes, classIndex);
+                } else {
+                    // Each worker fills its own partial model; the partial models are merged on join,
+                    // so no Component is ever shared between threads while it is being built.
+                    model = pool.invoke(new PartialModelTask(classes, 0, classes.size(), classIndex));
+                }
+                timer.model(model.values());
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        if (cached) {
+            // Every lookup that found nothing was reported as an unresolved class
+            analysisCache.storeModel(contentKey, model.values(), classIndex.getMissingClasses());
+        }
+        addModel(model);
+    }
+
+    // Adds the model of one analysis to the components collected so far
+    private void addModel(Map<String, Component> model) {
+        if (componentMap.isEmpty()) {
+            componentMap.putAll(model);
+        } else {
+            mergeModel(componentMap, model);
+        }
+    }
+
+    // On a model cache miss, patches the cached model of the class path as it was when its class
+    // files were last cached, if there is one, instead of building all of it again: as in
+    // updateClasspath only the packages of changed class files and the packages referring to a
+    // class whose kind changed are rebuilt. Returns false when there is no such model.
+    private boolean patchCachedModel(String name, JarClassIndex classIndex, String contentKey,
+                                     Map<File, Map<String, AnalysisCache.CachedClass>> previousClasses) {
+        // Cached class files by their entry names on this class path
+        Map<String, AnalysisCache.CachedClass> previousByEntry = new HashMap<>();
+        List<ZipEntry> previousEntries = new ArrayList<>();
+        for (File root : classIndex.getRoots()) {
+            String prefix = classIndex.getEntryPrefix(root);
+            for (Map.Entry<String, AnalysisCache.CachedClass> entry : previousClasses.get(root).entrySet()) {
+                ZipEntry previousEntry = new ZipEntry(prefix + entry.getKey());
+                previousEntry.setCrc(entry.getValue().getCrc());
+                previousEntries.add(previousEntry);
+                previousByEntry.put(previousEntry.getName(), entry.getValue());
+            }
+        }
+        if (previousEntries.isEmpty()) {
+            return false;
+        }
+        String previousKey = AnalysisCache.contentKey(previousEntries);
+        if (previousKey.equals(contentKey)) {
+            return false;
+        }
+        AnalysisCache.CachedModel previousModel;
+        try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CACHE_LOAD, name)) {
+            previousModel = analysisCache.loadModel(previousKey, symbols);
+        }
+        if (previousModel == null) {
+            return false;
+        }
+        System.out.println("Patching cached analysis of " + name);
+
+        IncrementalState state = new IncrementalState();
+        state.classes = previousByEntry;
+        for (Map.Entry<String, AnalysisCache.CachedClass> entry : previousByEntry.entrySet()) {
+            state.link(entry.getKey(), entry.getValue().getInfo());
+        }
+        Map<String, Component> model = previousModel.getComponents();
+        Set<String> unresolved = new HashSet<>(previousModel.getUnresolvedClasses());
+        patchModel(name, classIndex, state, model, unresolved);
+        // Unresolved classes of the cached model that are still referenced, and the ones the
+        // rebuilt packages did not find
+        unresolved.removeIf(className -> !state.referrers.containsKey(className));
+        unresolved.addAll(classIndex.getMissingClasses());
+        unresolvedClasses.addAll(unresolved);
+
+        for (File root : classIndex.getRoots()) {
+            int prefixLength = classIndex.getEntryPrefix(root).length();
+            Map<String, AnalysisCache.CachedClass> previous = previousClasses.get(root);
+            Map<String, AnalysisCache.CachedClass> current = new LinkedHashMap<>();
+            boolean changed = false;
+            for (JarEntry entry : classIndex.getClassEntries(root)) {
+                AnalysisCache.CachedClass cachedClass = state.classes.get(entry.getName());
+                if (cachedClass != null) {
+                    String entryName = entry.getName().substring(prefixLength);
+                    AnalysisCache.CachedClass old = previous.get(entryName);
+                    changed |= old == null || old.getCrc() != cachedClass.getCrc();
+                    current.put(entryName, cachedClass);
+                }
+            }
+            if (changed || current.size() != previous.size()) {
+                analysisCache.storeClasses(root, current);
+            }
+        }
+        analysisCache.storeModel(contentKey, model.values(), unresolved);
+        addModel(model);
+        return true;
+    }
+
+    // Decodes the class entries of one class path entry, reusing the cached class files whose
+    // CRC did not change. The cache is kept per JAR or directory under the names within it, so
+    // it serves a JAR whether it is analyzed alone or as part of a class path.
+    private List<ClassFileInfo> readClasses(File root, List<JarEntry> entries, Map<String, AnalysisCache.CachedClass> previous,
+                                            JarClassIndex classIndex, ForkJoinPool pool) {
+        int prefixLength = classIndex.getEntryPrefix(root).length();
+
+        Map<String, AnalysisCache.CachedClass> current = new LinkedHashMap<>();
+        List<JarEntry> changed = new ArrayList<>();
+        for (JarEntry entry : entries) {
+            String name = entry.getName().substring(prefixLength);
+            AnalysisCache.CachedClass cached = previous.get(name);
+            if (cached != null && cached.getCrc() == entry.getCrc()) {
+                classIndex.register(cached.getInfo());
+                current.put(name, cached);
+            } else {
+                changed.add(entry);
+            }
+        }
+        if (!previous.isEmpty()) {
+            System.out.println("Re-reading " + changed.size() + " of " + entries.size() + " class files of " + root.getName());
+        }
+
+        List<ClassFileInfo> decoded = readJarClasses(changed, classIndex, pool);
+        for (int i = 0; i < changed.size(); i++) {
+            if (decoded.get(i) != null) {
+                current.put(changed.get(i).getName().substring(prefixLength), new AnalysisCache.CachedClass(changed.get(i).getCrc(), decoded.get(i)));
+            }
+        }
+
+        if (analysisCache != null && !changed.isEmpty()) {
+            analysisCache.storeClasses(root, current);
+        }
+
+        // Keep entry name order regardless of which class files came from the cache
+        List<ClassFileInfo> classes = new ArrayList<>(current.size());
+        for (JarEntry entry : entries) {
+            AnalysisCache.CachedClass cachedClass = current.get(entry.getName().substring(prefixLength));
+            if (cachedClass != null) {
+                classes.add(cachedClass.getInfo());
+            }
+        }
+        return classes;
+    }
+
+    // In entry order; null where a class file cannot be decoded
+    private static List<ClassFileInfo> readJarClasses(List<JarEntry> entries, JarClassIndex classIndex, ForkJoinPool pool) {
+        return pool == null
+                ? entries.stream().map(classIndex::readJarClass).collect(Collectors.toList())
+                : pool.submit(() -> entries.parallelStream().map(classIndex::readJarClass).collect(Collectors.toList())).join();
+    }
+
+    // The class files of the last update and two indexes over them: the entries of each package,
+    // and for each class the classes that refer to it
+    private static class IncrementalState {
+        Map<String, AnalysisCache.CachedClass> classes = new HashMap<>();
+        final Map<String, Set<String>> packageEntries = new HashMap<>();
+        final Map<String, Set<String>> referrers = new HashMap<>();
+
+        void link(String entryName, ClassFileInfo info) {
+            packageEntries.computeIfAbsent(packageOf(info.getName()), k -> new TreeSet<>()).add(entryName);
+            for (String dependency : info.getDependencies()) {
+                referrers.computeIfAbsent(dependency, k -> new HashSet<>()).add(info.getName());
+            }
+        }
+
+        void unlink(String entryName, ClassFileInfo info) {
+            String packageName = packageOf(info.getName());
+            Set<String> entries = packageEntries.get(packageName);
+            if (entries != null && entries.remove(entryName) && entries.isEmpty()) {
+                packageEntries.remove(packageName);
+            }
+            for (String dependency : info.getDependencies()) {
+                Set<String> classes = referrers.get(dependency);
+                if (classes != null && classes.remove(info.getName()) && classes.isEmpty()) {
+                    referrers.remove(dependency);
+                }
+            }
+        }
+
+        private static String packageOf(String className) {
+            int lastDotIndex = className.lastIndexOf('.');
+            return (lastDotIndex == -1) ? "" : className.substring(0, lastDotIndex);
+        }
+    }
+
+    // Brings the model up to date with the class path, for watching a build output directory.
+    // The first call analyzes everything and replaces the model of this parser; later calls
+    // decode only the class files that were added, changed or removed since (by CRC, or by
+    // modification time and size in directories) and rebuild only the packages containing them
+    // plus the packages referring to a class whose kind changed. Unchanged packages keep their
+    // Component objects. Returns the names of the rebuilt and removed packages.
+    public Set<String> updateClasspath(List<File> classpath) throws IOException {
+        try (AnalysisMetrics.Timer jarTimer = metrics.startJar(describe(classpath));
+             JarClassIndex classIndex = new JarClassIndex(classpath, true)) {
+            try {
+                return updateClasspath(jarTimer.getJar(), classIndex);
+            } finally {
+                jarTimer.model(componentMap.values())
+                        .bytesRead(classIndex.getBytesRead())
+                        .classesLoaded(classIndex.getClassesRead());
+            }
+        }
+    }
+
+    private Set<String> updateClasspath(String name, JarClassIndex classIndex) {
+        if (incremental == null) {
+            incremental = new IncrementalState();
+            componentMap.clear();
+        }
+        return patchModel(name, classIndex, incremental, componentMap, unresolvedClasses);
+    }
+
+    // Brings model, the analysis of the class files in state, up to date with the class path and
+    // state with it. Classes that are found now are removed from unresolved.
+    private Set<String> patchModel(String name, JarClassIndex classIndex, IncrementalState state,
+                                   Map<String, Component> model, Set<String> unresolved) {
+        Map<String, AnalysisCache.CachedClass> previous = state.classes;
+        Map<String, AnalysisCache.CachedClass> current = new HashMap<>();
+        List<JarEntry> changed = new ArrayList<>();
+        Set<String> entryNames = new HashSet<>();
+        for (JarEntry entry : classIndex.getClassEntries()) {
+            entryNames.add(entry.getName());
+            AnalysisCache.CachedClass cached = previous.get(entry.getName());
+            if (cached != null && cached.getCrc() == entry.getCrc()) {
+                classIndex.register(cached.getInfo());
+                current.put(entry.getName(), cached);
+            } else {
+                changed.add(entry);
+            }
+        }
+        List<String> removed = new ArrayList<>();
+        for (String entryName : previous.keySet()) {
+            if (!entryNames.contains(entryName)) {
+                removed.add(entryName);
+            }
+        }
+
+        ForkJoinPool pool = parallelism > 1 && changed.size() > CLASSES_PER_TASK ? new ForkJoinPool(parallelism) : null;
+        try {
+            List<ClassFileInfo> decoded;
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CLASS_READ, name)) {
+                decoded = readJarClasses(changed, classIndex, pool);
+                timer.bytesRead(classIndex.getBytesRead()).classesLoaded(classIndex.getClassesRead());
+            }
+
+            // Classes whose kind may have changed for the classes referring to them: added,
+            // removed, and switched between concrete, abstract and interface
+            Set<String> affected = new TreeSet<>();
+            Set<String> kindChanged = new HashSet<>();
+            for (int i = 0; i < changed.size(); i++) {
+                String entryName = changed.get(i).getName();
+                ClassFileInfo newInfo = decoded.get(i);
+                if (newInfo != null) {
+                    current.put(entryName, new AnalysisCache.CachedClass(changed.get(i).getCrc(), newInfo));
+                }
+                AnalysisCache.CachedClass old = previous.get(entryName);
+                replace(state, entryName, old != null ? old.getInfo() : null, newInfo, affected, kindChanged);
+            }
+            for (String entryName : removed) {
+                replace(state, entryName, previous.get(entryName).getInfo(), null, affected, kindChanged);
+            }
+            for (String className : kindChanged) {
+                for (String referrer : state.referrers.getOrDefault(className, Collections.emptySet())) {
+                    affected.add(getPackageOfClass(referrer));
+                }
+            }
+            state.classes = current;
+            if (affected.isEmpty()) {
+                return affected;
+            }
+
+            try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.MODEL_BUILD, name)) {
+                List<ClassFileInfo> classes = new ArrayList<>();
+                for (String packageName : affected) {
+                    for (String entryName : state.packageEntries.getOrDefault(packageName, Collections.emptySet())) {
+                        classes.add(current.get(entryName).getInfo());
+                    }
+                }
+                // Found now, or reported again by addClasses
+                unresolved.removeAll(kindChanged);
+
+                Map<String, Component> rebuilt;
+                if (pool == null) {
+                    rebuilt = new HashMap<>();
+                    addClasses(rebuilt, classes, classIndex);
+                } else {
+                    rebuilt = pool.invoke(new PartialModelTask(classes, 0, classes.size(), classIndex));
+                }
+                for (String packageName : affected) {
+                    Component component = model.get(packageName);
+                    if (component != null) {
+                        component.clearContents();
+                    }
+                }
+                mergeModel(model, rebuilt);
+                for (String packageName : affected) {
+                    removeIfEmpty(model, state, packageName);
+                }
+                timer.model(model.values());
+            }
+            System.out.println("Updated " + affected.size() + " packages from " + (changed.size() + removed.size()) + " changed class files");
+            return affected;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private void replace(IncrementalState state, String entryName, ClassFileInfo oldInfo, ClassFileInfo newInfo,
+                         Set<String> affected, Set<String> kindChanged) {
+        int kindFlags = ClassFileInfo.ACC_INTERFACE | ClassFileInfo.ACC_ABSTRACT;
+        if (oldInfo != null) {
+            state.unlink(entryName, oldInfo);
+            affected.add(getPackageOfClass(oldInfo.getName()));
+        }
+        if (newInfo != null) {
+            state.link(entryName, newInfo);
+            affected.add(getPackageOfClass(newInfo.getName()));
+        }
+        if (oldInfo == null || newInfo == null || !oldInfo.getName().equals(newInfo.getName())
+                || (oldInfo.getAccessFlags() & kindFlags) != (newInfo.getAccessFlags() & kindFlags)) {
+            if (oldInfo != null) {
+                kindChanged.add(oldInfo.getName());
+            }
+            if (newInfo != null) {
+                kindChanged.add(newInfo.getName());
+            }
+        }
+    }
 
+    // A package without classes of its own is only kept as the parent of other packages
+    private void removeIfEmpty(Map<String, Component> model, IncrementalState state, String packageName) {
+        Component component = model.get(packageName);
+        if (component == null || !component.getSubPackages().isEmpty()
+                || state.packageEntries.containsKey(packageName)) {
+            return;
+        }
+        model.remove(packageName);
+        String parentPackage = getParentPackage(packageName);
+        if (parentPackage != null && model.containsKey(parentPackage)) {
+            model.get(parentPackage).removeSubPackage(packageName);
+            removeIfEmpty(model, state, parentPackage);
+        }
+    }
+
+    // Classes referenced by the analyzed code that could not be found, in name order. Add the
+    // JARs that contain them to the class path to have them classified.
+    public SortedSet<String> getUnresolvedClasses() {
+        return new TreeSet<>(unresolvedClasses);
+    }
+
+    // Timings and counts of everything this parser analyzed so far
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Lets several parsers report into one AnalysisMetrics
+    public void setMetrics(AnalysisMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Enables the on-disk analysis cache for analyzeJar, null disables it
+    public void setAnalysisCache(AnalysisCache analysisCache) {
+        this.analysisCache = analysisCache;
+    }
+
+    // Keeps references to classes that are not on the class path with the components instead of
+    // reporting them, so that merging the partial models of several shards (see ModelMerge) can
+    // classify them. Cached models are bypassed, they do not store such references.
+    public void setKeepUnresolvedReferences(boolean keepUnresolvedReferences) {
+        this.keepUnresolvedReferences = keepUnresolvedReferences;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private void addClasses(Map<String, Component> model, List<ClassFileInfo> classes, JarClassIndex classIndex) {
+        for (ClassFileInfo clazz : classes) {
+            String packageName = getPackageOfClass(clazz.getName());
+            if (isIgnored(packageName)) {
+                continue;
+            }
+
+            Component component = getOrCreatePackage(model, packageName);
+            addClass(component, clazz.getName(), classIndex);
+            for (String dependency : clazz.getDependencies()) {
+                addOutbound(component, dependency, classIndex);
+            }
+        }
+    }
+
+    private class PartialModelTask extends RecursiveTask<Map<String, Component>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ClassFileInfo> classes;
+        private final int from;
+        private final int to;
+        private final JarClassIndex classIndex;
+
+        PartialModelTask(List<ClassFileInfo> classes, int from, int to, JarClassIndex classIndex) {
+            this.classes = classes;
+            this.from = from;
+            this.to = to;
+            this.classIndex = classIndex;
+        }
+
+        @Override
+        protected Map<String, Component> compute() {
+            if (to - from <= CLASSES_PER_TASK) {
+                Map<String, Component> model = new HashMap<>();
+                addClasses(model, classes.subList(from, to), classIndex);
+                return model;
+            }
+            int middle = (from + to) >>> 1;
+            PartialModelTask left = new PartialModelTask(classes, from, middle, classIndex);
+            PartialModelTask right = new PartialModelTask(classes, middle, to, classIndex);
+            left.fork();
+            Map<String, Component> rightModel = right.compute();
+            Map<String, Component> leftModel = left.join();
+            mergeModel(leftModel, rightModel);
+            return leftModel;
+        }
+    }
+
+    // Merges a partial model into target. Sub-package links are rebuilt against the
+    // components of target so that no reference into the partial model survives.
+    private void mergeModel(Map<String, Component> target, Map<String, Component> source) {
+        for (Component part : source.values()) {
+            Component component = target.computeIfAbsent(part.getName(), this::newComponent);
+            component.mergeFrom(part);
+        }
+        for (Component part : source.values()) {
+            Component component = target.get(part.getName());
+            for (String subPackageName : part.getSubPackages().keySet()) {
+                component.addSubPackage(subPackageName, target.get(subPackageName));
+            }
+        }
+    }
+
+    private void parseDocument(File xmlFile, JarClassIndex classIndex) throws Exception {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         DocumentBuilder builder = factory.newDocumentBuilder();
         Document document = builder.parse(xmlFile);
         document.getDocumentElement().normalize();
         NodeList packageList = document.getElementsByTagName("package");
 
-        // Load classes from the JAR
-        JarFile jarFile = new JarFile(new File(jarFileName));
-        URLClassLoader loader = new URLClassLoader(new URL[]{ new File(jarFileName).toURI().toURL() });
-
-        jarFile.stream().forEach(entry -> {
-            if (entry.getName().endsWith(".class")) {
-                try {
-                    // Convert to fully qualified class name format used in Java + remove the ".class" extension to get actual class name
-                    String className = entry.getName().replace('/', '.').replace(".class", "");
-                    loader.loadClass(className);
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
-
         // Process each package for classes and dependencies
         for (int i = 0; i < packageList.getLength(); i++) {
             Node packageNode = packageList.item(i);
@@ -51,26 +622,11 @@ public class DependencyParser {
                     continue;
 
                 String packageName = packageElement.getElementsByTagName("name").item(0).getTextContent();
-                if (ignoreList.stream().anyMatch(packageName::startsWith)) {
+                if (isIgnored(packageName)) {
                     continue;
                 }
 
-                Component component = componentMap.computeIfAbsent(packageName, Component::new);
-
-                int depth = getPackageDepth(packageName);
-                component.setDepth(depth);
-
-                // Handle parent-child relationship
-                String parentPackage = getParentPackage(packageName);
-                if (parentPackage != null) {
-                    Component parentComponent = componentMap.computeIfAbsent(parentPackage,
-                            parent -> {
-                                Component newParent = new Component(parent);
-                                newParent.setDepth(getPackageDepth(parent));
-                                return newParent;
-                            });
-                    parentComponent.addSubPackage(packageName, component);
-                }
+                Component component = getOrCreatePackage(componentMap, packageName);
 
                 // Process classes in package
                 NodeList classList = packageElement.getElementsByTagName("class");
@@ -79,35 +635,7 @@ public class DependencyParser {
                     if (classNode.getNodeType() == Node.ELEMENT_NODE) {
                         Element classElement = (Element) classNode;
                         String className = classElement.getElementsByTagName("name").item(0).getTextContent();
-
-                        try {
-                            Class<?> clazz = loader.loadClass(className);
-                            component.getComposedParts().add(className);
-
-                            if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
-                                component.getProvidedInterfaces().add(clazz.getName());
-                            }
-
-                            // Check if a class explicitly extends a concrete class
-                            if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
-                                Class<?> superclass = clazz.getSuperclass();
-                                if (superclass != null && !superclass.getName().equals("java.lang.Object")) {
-                                    if (!superclass.isInterface() && !Modifier.isAbstract(superclass.getModifiers())) {
-                                        component.getConcreteDependencies().add(className);
-                                    } else if (Modifier.isAbstract(superclass.getModifiers())) {
-                                        // If it extends an abstract class, register it
-                                        component.addClassImplementation(clazz.getName(), superclass.getName());
-                                    }
-                                }
-                                // Track implemented interfaces
-                                for (Class<?> interfaceClass : clazz.getInterfaces()) {
-                                    component.addClassImplementation(clazz.getName(), interfaceClass.getName());
-                                }
-                            }
-
-                        } catch (ClassNotFoundException e) {
-                            System.err.println("Class not found: " + className);
-                        }
+                        addClass(component, className, classIndex);
 
                         // Process dependencies
                         NodeList outboundNodes = classElement.getElementsByTagName("outbound");
@@ -115,28 +643,8 @@ public class DependencyParser {
                             Node outboundNode = outboundNodes.item(k);
                             if (outboundNode.getNodeType() == Node.ELEMENT_NODE) {
                                 Element outboundElement = (Element) outboundNode;
-                                String outboundName = outboundNode.getTextContent();
-                                String outboundType = outboundElement.getAttribute("type");
-
-                                if (outboundType.equals("class")) {
-                                    // primitive array type like I[] etc.
-                                    if (outboundName.matches("^[ZCBSIFDJ]((\\[\\])+)?$"))
-                                        continue;
-
-                                    boolean shouldIgnore = ignoreList.stream().anyMatch(ignore -> outboundName.startsWith(ignore));
-                                    if (shouldIgnore)
-                                        continue;
-
-                                    try {
-                                        Class<?> outboundClass = loader.loadClass(outboundName);
-                                        if (outboundClass.isInterface() || Modifier.isAbstract(outboundClass.getModifiers())) {
-                                            component.getRequiredInterfaces().add(outboundName);
-                                        } else {
-                                            component.getConcreteDependencies().add(outboundName);
-                                        }
-                                    } catch (ClassNotFoundException e) {
-                                        System.out.println("Class not found: " + outboundName);
-                                    }
+                                if (outboundElement.getAttribute("type").equals("class")) {
+                                    addOutbound(component, outboundNode.getTextContent(), classIndex);
                                 }
                             }
                         }
@@ -146,11 +654,171 @@ public class DependencyParser {
         }
     }
 
+    // Single forward pass over the XML. Only the package, class and outbound currently open
+    // are tracked, so memory stays constant apart from the component model itself.
+    private void parseStream(File xmlFile, JarClassIndex classIndex) throws Exception {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                Component component = null;     // current confirmed package, null when skipped
+                boolean packageOpen = false;    // inside a <package>, waiting for its <name>
+                boolean classOpen = false;      // inside a <class>, waiting for its <name>
+                boolean inClass = false;        // inside a <class> of a processed package
+
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String tag = reader.getLocalName();
+                        switch (tag) {
+                            case "package":
+                                component = null;
+                                packageOpen = "yes".equals(reader.getAttributeValue(null, "confirmed"));
+                                break;
+                            case "class":
+                                classOpen = component != null;
+                                inClass = component != null;
+                                break;
+                            case "name":
+                                if (packageOpen) {
+                                    packageOpen = false;
+                                    String packageName = reader.getElementText();
+                                    if (!isIgnored(packageName)) {
+                                        component = getOrCreatePackage(componentMap, packageName);
+                                    }
+                                } else if (classOpen) {
+                                    classOpen = false;
+                                    addClass(component, reader.getElementText(), classIndex);
+                                }
+                                break;
+                            case "outbound":
+                                if (inClass && "class".equals(reader.getAttributeValue(null, "type"))) {
+                                    addOutbound(component, reader.getElementText(), classIndex);
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        String tag = reader.getLocalName();
+                        if (tag.equals("class")) {
+                            classOpen = false;
+                            inClass = false;
+                        } else if (tag.equals("package")) {
+                            component = null;
+                            packageOpen = false;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    private Component newComponent(String packageName) {
+        return new Component(packageName, symbols);
+    }
+
+    private boolean isIgnored(String name) {
+        return ignoreList.stream().anyMatch(name::startsWith);
+    }
+
+    private Component getOrCreatePackage(Map<String, Component> model, String packageName) {
+        Component component = model.computeIfAbsent(packageName, this::newComponent);
+
+        int depth = getPackageDepth(packageName);
+        component.setDepth(depth);
+
+        // Handle parent-child relationship
+        String parentPackage = getParentPackage(packageName);
+        if (parentPackage != null) {
+            Component parentComponent = model.computeIfAbsent(parentPackage,
+                    parent -> {
+                        Component newParent = newComponent(parent);
+                        newParent.setDepth(getPackageDepth(parent));
+                        return newParent;
+                    });
+            parentComponent.addSubPackage(packageName, component);
+        }
+        return component;
+    }
+
+    private void addClass(Component component, String className, JarClassIndex classIndex) {
+        ClassFileInfo clazz = classIndex.find(className);
+        if (clazz == null) {
+            if (unresolvedClasses.add(className)) {
+                System.err.println("Class not found: " + className);
+            }
+            return;
+        }
+        component.getComposedParts().add(className);
+
+        if (clazz.isInterface() || clazz.isAbstract()) {
+            component.getProvidedInterfaces().add(clazz.getName());
+        }
+
+        // Check if a class explicitly extends a concrete class
+        if (!clazz.isInterface() && !clazz.isAbstract()) {
+            String superName = clazz.getSuperName();
+            if (superName != null && !superName.equals("java.lang.Object")) {
+                ClassFileInfo superclass = classIndex.find(superName);
+                if (superclass == null && keepUnresolvedReferences) {
+                    component.addUnresolvedSuperclass(className, superName);
+                } else if (superclass == null) {
+                    if (unresolvedClasses.add(superName)) {
+                        System.err.println("Class not found: " + superName);
+                    }
+                } else if (!superclass.isInterface() && !superclass.isAbstract()) {
+                    component.getConcreteDependencies().add(className);
+                } else if (superclass.isAbstract()) {
+                    // If it extends an abstract class, register it
+                    component.addClassImplementation(clazz.getName(), superclass.getName());
+                }
+            }
+            // Track implemented interfaces
+            for (String interfaceName : clazz.getInterfaceNames()) {
+                component.addClassImplementation(clazz.getName(), interfaceName);
+            }
+        }
+    }
+
+    private void addOutbound(Component component, String outboundName, JarClassIndex classIndex) {
+        // primitive array type like I[] etc.
+        if (outboundName.matches("^[ZCBSIFDJ]((\\[\\])+)?$"))
+            return;
+
+        if (isIgnored(outboundName))
+            return;
+
+        ClassFileInfo outboundClass = classIndex.find(outboundName);
+        if (outboundClass == null && keepUnresolvedReferences) {
+            component.addUnresolvedReference(outboundName);
+        } else if (outboundClass == null) {
+            // Reported once per class rather than once per reference
+            if (unresolvedClasses.add(outboundName)) {
+                System.out.println("Class not found: " + outboundName);
+            }
+        } else if (outboundClass.isInterface() || outboundClass.isAbstract()) {
+            component.getRequiredInterfaces().add(outboundName);
+        } else {
+            component.getConcreteDependencies().add(outboundName);
+        }
+    }
+
     private String getParentPackage(String packageName) {
         int lastDotIndex = packageName.lastIndexOf('.');
         return (lastDotIndex == -1) ? null : packageName.substring(0, lastDotIndex);
     }
 
+    private String getPackageOfClass(String className) {
+        int lastDotIndex = className.lastIndexOf('.');
+        return (lastDotIndex == -1) ? "" : className.substring(0, lastDotIndex);
+    }
+
     private int getPackageDepth(String packageName) {
         if (packageName.isEmpty()) return 0;
         return packageName.contains(".") ? packageName.split("\\.").length : 1;
@@ -160,6 +828,44 @@ public class DependencyParser {
         return new HashSet<>(componentMap.values());
     }
 
+    // Immutable copy of the current model for the generators; later analysis does not affect it
+    public ModelSnapshot snapshot() {
+        try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.SNAPSHOT, null)) {
+            timer.model(componentMap.values());
+            return ModelSnapshot.of(componentMap.values(), getGlobalMaxDepth());
+        }
+    }
+
+    // Writes the model in the ModelFile format, e.g. for a CI job whose result the GUI opens
+    public void saveModel(Path file) throws IOException {
+        ModelFile.write(file, componentMap.values());
+    }
+
+    // Replaces the model with one written by saveModel, without analyzing anything. References
+    // a shard merge could not resolve count as unresolved classes.
+    public void loadModel(Path file) throws IOException {
+        try (ModelFile.Reader reader = ModelFile.open(file, symbols)) {
+            componentMap = reader.readAll();
+        }
+        unresolvedClasses.clear();
+        incremental = null;
+        for (Component component : componentMap.values()) {
+            component.getUnresolvedReferenceIds().forEach(id -> unresolvedClasses.add(symbols.getName(id)));
+            for (int superId : component.getUnresolvedSuperclassIds().values()) {
+                unresolvedClasses.add(symbols.getName(superId));
+            }
+        }
+    }
+
+    // Timed as the CYCLES phase; the snapshot keeps the result for the generators
+    public PackageCycles findPackageCycles(ModelSnapshot snapshot) {
+        try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.CYCLES, null)) {
+            PackageCycles cycles = snapshot.getPackageCycles();
+            timer.model(snapshot.getComponentList());
+            return cycles;
+        }
+    }
+
     public void printComponents() {
         for (Component component : componentMap.values()) {
             System.out.println("Component: " + component.getName());
@@ -204,6 +910,21 @@ public class DependencyParser {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            // Headless mode for build servers, see BatchAnalyzer
+            System.exit(BatchAnalyzer.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            // Live diagrams of a build output directory, see ModelWatcher
+            System.exit(ModelWatcher.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals("--shard")) {
+            // One shard of a sharded analysis, see ShardedAnalysis
+            System.exit(ShardedAnalysis.runShard(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals("--merge")) {
+            System.exit(ShardedAnalysis.runMerge(Arrays.copyOfRange(args, 1, args.length)));
+        }
         try {
             // File name used strictly as example
             String jarFileName = "D:\\Licenta\\ComponentDiagramGenerator\\src\\Licenta.jar";
@@ -212,18 +933,31 @@ public class DependencyParser {
                 throw new FileNotFoundException("JAR file not found: " + jarFileName);
             }
 
-            String xmlFileName = jarFileName.replace(".jar", "_dependencies.xml");
-            // Generate XML
             System.out.println("Generating dependency analysis for: " + jarFileName);
-            runDependencyFinder(jarFileName, xmlFileName);
-            System.out.println("Successfully created: " + xmlFileName);
-
-            File xmlFile = new File(xmlFileName);
-
             DependencyParser parser = new DependencyParser();
-            parser.parseXML(xmlFile, jarFileName);
+            if (args.length > 0 && args[0].equals("--dependency-finder")) {
+                // Legacy path through the external DependencyFinder tool and its XML report
+                String xmlFileName = jarFileName.replace(".jar", "_dependencies.xml");
+                try (AnalysisMetrics.Timer timer = parser.getMetrics().start(AnalysisMetrics.Phase.DEPENDENCY_FINDER, new File(jarFileName).getName())) {
+                    runDependencyFinder(jarFileName, xmlFileName);
+                    timer.bytesRead(new File(jarFileName).length());
+                }
+                System.out.println("Successfully created: " + xmlFileName);
+                parser.parseXML(new File(xmlFileName), jarFileName);
+            } else {
+                parser.setParallelism(Integer.getInteger("analysis.threads", Runtime.getRuntime().availableProcessors()));
+                parser.setAnalysisCache(new AnalysisCache(AnalysisCache.defaultDirectory()));
+                parser.analyzeJar(jarFileName);
+            }
             parser.printComponents();
 
+            ModelSnapshot snapshot = parser.snapshot();
+            PackageCycles cycles = parser.findPackageCycles(snapshot);
+            if (!cycles.isEmpty()) {
+                System.out.println("Package dependency cycles detected.");
+                cycles.report().forEach(System.out::println);
+            }
+
             if (parser.hasConcreteDependencies()) {
                 parser.generateBadDesignReport();
             } else {
@@ -233,13 +967,13 @@ public class DependencyParser {
 
                 PlantUMLGenerator.VisualizationMode mode;
                 int grayBoxLevel = 1;  //default
-                int globalMaxDepth = parser.getGlobalMaxDepth();
+                int globalMaxDepth = snapshot.getGlobalMaxDepth();
 
                 if (modeChoice == 1) {
                     mode = UMLGenerator.VisualizationMode.WHITE_BOX;
                 } else if (modeChoice == 2) {
                     mode = UMLGenerator.VisualizationMode.GRAY_BOX;
-                    int maxAllowedLevel = parser.getGlobalMaxDepth() - 1;
+                    int maxAllowedLevel = globalMaxDepth - 1;
                     System.out.println("Enter gray-box level (1-" + maxAllowedLevel + "): ");
                     grayBoxLevel = scanner.nextInt();
 
@@ -258,11 +992,22 @@ public class DependencyParser {
 
                 //Create the generator using the factory
                 UMLGenerator umlGenerator = UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML);
-                String umlText = umlGenerator.generateUML(parser.getComponents(), mode, grayBoxLevel, globalMaxDepth);
-
+                UMLGenerator.View view = new UMLGenerator.View(mode, grayBoxLevel);
                 String outputFileName = "component_diagram";
-                saveAndGenerateDiagram(umlText, outputFileName);
+                // The working directory unless -Ddiagram.outputDir=... says otherwise
+                Path outputDirectory = Paths.get(System.getProperty("diagram.outputDir", ""));
+                Path pumlFile;
+                try (AnalysisMetrics.Timer timer = parser.getMetrics().start(AnalysisMetrics.Phase.GENERATE, null)) {
+                    pumlFile = writeDiagramSource(umlGenerator, snapshot, view, outputDirectory, outputFileName);
+                    timer.model(snapshot.getComponentList());
+                }
+
+                try (AnalysisMetrics.Timer timer = parser.getMetrics().start(AnalysisMetrics.Phase.RENDER, null)) {
+                    generateDiagram(pumlFile, outputFileName);
+                    timer.model(snapshot.getComponentList());
+                }
             }
+            System.out.println(parser.getMetrics().snapshot());
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -270,38 +1015,25 @@ public class DependencyParser {
     }
 
 
-    protected static String saveAndGenerateDiagram(String plantUMLText, String baseFileName) throws IOException {
-        Path outputPath = Paths.get("D:\\Licenta\\ComponentDiagramGenerator\\src");
-        File pumlFile = new File(outputPath.resolve(baseFileName + ".puml").toString());
-        try (FileWriter writer = new FileWriter(pumlFile)) {
-            writer.write(plantUMLText);
+    // Streams the generator output straight into the .puml file instead of building the text first
+    protected static Path writeDiagramSource(UMLGenerator generator, ModelSnapshot snapshot, UMLGenerator.View view,
+                                             Path outputDirectory, String baseFileName) throws IOException {
+        if (!outputDirectory.toString().isEmpty()) {
+            Files.createDirectories(outputDirectory);
         }
-        generateDiagram(pumlFile);
-        return pumlFile.getAbsolutePath();
+        Path pumlFile = outputDirectory.resolve(baseFileName + ".puml");
+        try (Writer writer = Files.newBufferedWriter(pumlFile, StandardCharsets.UTF_8)) {
+            generator.writeUML(snapshot, view, writer);
+        }
+        return pumlFile;
     }
 
-
-    private static void generateDiagram(File pumlFile) throws IOException {
-        String plantUmlPath = "D:\\Licenta\\ComponentDiagramGenerator\\src\\plantuml.jar";
-
-        // Command to generate the diagram
-        String command = String.format("java -jar \"%s\" \"%s\"",
-                plantUmlPath,
-                pumlFile.getAbsolutePath());
-
-        // Run the command
-        Process process = Runtime.getRuntime().exec(command);
-        try {
-            int exitCode = process.waitFor();
-            if (exitCode == 0) {
-                System.out.println("Diagram generated successfully!");
-            } else {
-                System.err.println("Error generating diagram. Exit code: " + exitCode);
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Diagram generation interrupted");
-        }
+    // Renders in-process through the shared, already warm PlantUML instance, which reads the
+    // file itself, so the text is never held here as a whole
+    private static void generateDiagram(Path pumlFile, String baseFileName) throws IOException {
+        DiagramRenderer renderer = DiagramRendererFactory.createRenderer(DiagramRendererFactory.RendererType.EMBEDDED);
+        renderer.renderFile(pumlFile, pumlFile.resolveSibling(baseFileName + ".png"), DiagramRenderer.OutputFormat.PNG);
+        System.out.println("Diagram generated successfully!");
     }
 
     protected static void runDependencyFinder(String jarPath, String outputXmlPath) throws Exception {
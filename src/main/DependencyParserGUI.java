@@ -1,33 +1,61 @@
 package main;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.*;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 public class DependencyParserGUI extends Application {
 
-    private TextArea outputArea;
-    private Button btnLoadJar, btnAnalyze, btnPrintStructure, btnGenerateDiagram;
+    // Virtualized: only the visible lines have cells, however long the output gets
+    private ListView<String> outputList;
+    private final ConsoleBuffer console = new ConsoleBuffer(Integer.getInteger("gui.console.lines", 10_000));
+    private TextArea metricsArea;
+    private Button btnLoadJar, btnOpenModel, btnWatch, btnAnalyze, btnPrintStructure, btnGenerateDiagram;
     private ComboBox<String> visualizationMode;
     private Spinner<Integer> grayBoxLevel;
     private DependencyParser parser;
-    private File selectedJarFile;
+    // Taken once per analysis; every diagram is generated from it
+    private volatile ModelSnapshot snapshot;
+    // Analyzed together as one class path; the first JAR names the analysis
+    private List<File> selectedJarFiles;
+    // Set instead of the JARs when a saved model was opened
+    private File openedModel;
     private ExecutorService executor;
     private int currentMaxDepth = 1;
     private Stage primaryStage;
+    private RenderCache renderCache;
+    // Set while a classes folder is watched; every update regenerates the last diagram shown
+    private ModelWatcher watcher;
+    private volatile UMLGenerator.View lastView;
+    // Analyze, Open Model and Generate tasks on the executor, touched on the FX thread only
+    private int runningTasks;
+    private DiagramViewer diagramViewer;
+
+    private static final long RENDER_CACHE_MEMORY_BYTES = 64L * 1024 * 1024;
+    private static final long RENDER_CACHE_DISK_BYTES = 512L * 1024 * 1024;
+    private static final Duration CONSOLE_REFRESH = Duration.millis(100);
 
     public static void main(String[] args) {
         launch(args);
@@ -46,13 +74,26 @@ public class DependencyParserGUI extends Application {
         primaryStage.setScene(scene);
         primaryStage.setOnCloseRequest(this::handleWindowClose);
         primaryStage.show();
+
+        // Load PlantUML while the user picks a JAR so the first diagram renders warm
+        Thread warmUp = new Thread(() -> {
+            try {
+                DiagramRendererFactory.getEmbeddedRenderer().warmUp();
+            } catch (IOException e) {
+                System.err.println("PlantUML warm-up failed: " + e.getMessage());
+            }
+        }, "plantuml-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
     }
 
     private void createUIComponents() {
         // Button initialization
-        btnLoadJar = new Button("Load JAR");
+        btnLoadJar = new Button("Load JARs");
+        btnOpenModel = new Button("Open Model");
+        btnWatch = new Button("Watch Folder");
         btnAnalyze = new Button("Analyze");
-        btnPrintStructure = new Button("Print Structure");
+        btnPrintStructure = new Button("Show Structure");
         btnGenerateDiagram = new Button("Generate Diagram");
 
         // Visualization mode dropdown
@@ -66,12 +107,17 @@ public class DependencyParserGUI extends Application {
         grayBoxLevel.setEditable(true);
         grayBoxLevel.setDisable(true);
 
-        // Output area setup
-        outputArea = new TextArea();
-        outputArea.setEditable(false);
-        outputArea.setStyle("-fx-font-family: monospace;");
+        // Output list setup
+        outputList = new ListView<>();
+        outputList.setStyle("-fx-font-family: monospace;");
         redirectSystemOut();
 
+        // Timings of the last analysis and diagram, next to the output
+        metricsArea = new TextArea();
+        metricsArea.setEditable(false);
+        metricsArea.setStyle("-fx-font-family: monospace;");
+        metricsArea.setPrefColumnCount(36);
+
         // Initial button states
         setControlsDisabled(false);
         btnAnalyze.setDisable(true);
@@ -82,7 +128,7 @@ public class DependencyParserGUI extends Application {
     }
 
     private Scene createMainScene() {
-        HBox fileControls = new HBox(10, btnLoadJar, btnAnalyze);
+        HBox fileControls = new HBox(10, btnLoadJar, btnOpenModel, btnWatch, btnAnalyze);
         fileControls.setPadding(new Insets(5));
 
         HBox settingsControls = new HBox(10,
@@ -97,23 +143,24 @@ public class DependencyParserGUI extends Application {
         VBox controlPanel = new VBox(10, fileControls, settingsControls, actionsControls);
         controlPanel.setPadding(new Insets(10));
 
-        // Output area with scroll
-        ScrollPane outputScroll = new ScrollPane(outputArea);
-        outputScroll.setFitToWidth(true);
-        outputScroll.setFitToHeight(true);
+        // The list scrolls itself
+        HBox outputPane = new HBox(10, outputList, metricsArea);
+        HBox.setHgrow(outputList, Priority.ALWAYS);
 
-        VBox root = new VBox(10, controlPanel, new Separator(), outputScroll);
+        VBox root = new VBox(10, controlPanel, new Separator(), outputPane);
         root.setPadding(new Insets(10));
 
-        VBox.setVgrow(outputScroll, Priority.ALWAYS);
+        VBox.setVgrow(outputPane, Priority.ALWAYS);
 
         return new Scene(root, 900, 600);
     }
 
     private void setupEventHandlers() {
         btnLoadJar.setOnAction(e -> loadJarFile());
+        btnOpenModel.setOnAction(e -> openModel());
+        btnWatch.setOnAction(e -> watchFolder());
         btnAnalyze.setOnAction(e -> analyzeInBackground());
-        btnPrintStructure.setOnAction(e -> printStructure());
+        btnPrintStructure.setOnAction(e -> showStructure());
         btnGenerateDiagram.setOnAction(e -> generateDiagramInBackground());
 
         visualizationMode.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
@@ -122,6 +169,7 @@ public class DependencyParserGUI extends Application {
     }
 
     private void handleWindowClose(WindowEvent event) {
+        stopWatching();
         if (executor != null) {
             executor.shutdownNow();
         }
@@ -129,50 +177,54 @@ public class DependencyParserGUI extends Application {
         System.exit(0);
     }
 
+    // Console output goes through the ring buffer and reaches the list in batches, at most
+    // every CONSOLE_REFRESH, so a burst of output costs one list update instead of one per line
     private void redirectSystemOut() {
-        OutputStream out = new OutputStream() {
-            private StringBuilder buffer = new StringBuilder();
-
-            @Override
-            public void write(int b) {
-                buffer.append((char)b);
-                if (b == '\n') {
-                    flushBuffer();
-                }
-            }
+        PrintStream out = new PrintStream(console.getOutputStream(), true, StandardCharsets.UTF_8);
+        System.setOut(out);
+        System.setErr(out);
 
-            @Override
-            public void write(byte[] b, int off, int len) {
-                buffer.append(new String(b, off, len));
-                if (buffer.indexOf("\n") >= 0) {
-                    flushBuffer();
-                }
-            }
+        Timeline refresh = new Timeline(new KeyFrame(CONSOLE_REFRESH, e -> drainConsole()));
+        refresh.setCycleCount(Animation.INDEFINITE);
+        refresh.play();
+    }
 
-            private void flushBuffer() {
-                String content = buffer.toString();
-                buffer.setLength(0);
-                Platform.runLater(() -> outputArea.appendText(content));
-            }
-        };
+    private void drainConsole() {
+        List<String> lines = console.drain();
+        if (lines.isEmpty()) {
+            return;
+        }
+        ObservableList<String> items = outputList.getItems();
+        items.addAll(lines);
+        int overflow = items.size() - console.getCapacity();
+        if (overflow > 0) {
+            items.remove(0, overflow);
+        }
+        outputList.scrollTo(items.size() - 1);
+    }
 
-        System.setOut(new PrintStream(out, true));
-        System.setErr(new PrintStream(out, true));
+    private void clearOutput() {
+        console.clear();
+        outputList.getItems().clear();
     }
 
     private void loadJarFile() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Select JAR File");
+        fileChooser.setTitle("Select JAR Files");
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JAR Files", "*.jar"));
-        File file = fileChooser.showOpenDialog(primaryStage);
+        List<File> files = fileChooser.showOpenMultipleDialog(primaryStage);
 
-        if (file != null) {
-            selectedJarFile = file;
+        if (files != null && !files.isEmpty()) {
+            stopWatching();
+            selectedJarFiles = List.copyOf(files);
             parser = new DependencyParser();
-            outputArea.clear();
-            System.out.println("Loaded: " + selectedJarFile.getAbsolutePath());
+            clearOutput();
+            metricsArea.clear();
+            for (File file : selectedJarFiles) {
+                System.out.println("Loaded: " + file.getAbsolutePath());
+            }
 
-            btnAnalyze.setDisable(false);
+            setControlsDisabled(false);
             btnPrintStructure.setDisable(true);
             btnGenerateDiagram.setDisable(true);
             visualizationMode.setDisable(true);
@@ -182,44 +234,151 @@ public class DependencyParserGUI extends Application {
         }
     }
 
+    // Analyzes a build output folder and keeps the model and the last diagram up to date while
+    // the folder is recompiled, see ModelWatcher
+    private void watchFolder() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Select Classes Folder");
+        File directory = directoryChooser.showDialog(primaryStage);
+        if (directory == null) {
+            return;
+        }
+        stopWatching();
+        selectedJarFiles = List.of(directory);
+        parser = new DependencyParser();
+        parser.setParallelism(Integer.getInteger("analysis.threads", Runtime.getRuntime().availableProcessors()));
+        clearOutput();
+        metricsArea.clear();
+        DependencyParser watched = parser;
+        try {
+            watcher = new ModelWatcher(watched, selectedJarFiles, (updated, changed) -> modelUpdated(watched, updated, changed));
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + directory + ": " + e.getMessage());
+            return;
+        }
+        snapshot = null;
+        setControlsDisabled(false);
+        btnPrintStructure.setDisable(true);
+        btnGenerateDiagram.setDisable(true);
+        visualizationMode.setDisable(true);
+        grayBoxLevel.setDisable(true);
+        System.out.println("Watching: " + directory.getAbsolutePath());
+        Thread thread = new Thread(watcher::watch, "model-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void stopWatching() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Error stopping the watcher: " + e.getMessage());
+            }
+            watcher = null;
+        }
+    }
+
+    // Runs on the watcher thread, which owns watched; the UI is only touched through
+    // Platform.runLater, and not at all once another model replaced the watched one
+    private void modelUpdated(DependencyParser watched, ModelSnapshot updated, Set<String> changedPackages) {
+        if (!changedPackages.isEmpty()) {
+            System.out.println("Changed: " + String.join(", ", changedPackages));
+        }
+        UMLGenerator.View view = lastView;
+        SvgScene diagram = null;
+        if (view != null) {
+            try {
+                Path source = writeSource(updated, view);
+                try {
+                    diagram = SvgScene.parse(new ByteArrayInputStream(getRenderCache().render(source, DiagramRenderer.OutputFormat.SVG)));
+                } finally {
+                    Files.deleteIfExists(source);
+                }
+            } catch (IOException e) {
+                System.err.println("Diagram error: " + e.getMessage());
+            }
+        }
+        SvgScene updatedDiagram = diagram;
+        Platform.runLater(() -> {
+            if (parser != watched) {
+                return;
+            }
+            snapshot = updated;
+            showMetrics();
+            currentMaxDepth = updated.getGlobalMaxDepth();
+            grayBoxLevel.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(
+                    1, Math.max(1, currentMaxDepth - 1), Math.min(grayBoxLevel.getValue(), Math.max(1, currentMaxDepth - 1))));
+            // A running Generate re-enables the controls when it finishes
+            if (runningTasks == 0) {
+                setControlsDisabled(false);
+            }
+            if (updatedDiagram != null && diagramViewer != null) {
+                diagramViewer.setScene(updatedDiagram, true);
+            }
+        });
+    }
+
     private void analyzeInBackground() {
-        setControlsDisabled(true);
-        outputArea.clear();
-        System.out.println("Starting analysis of: " + selectedJarFile.getName());
+        taskStarted();
+        clearOutput();
+        System.out.println("Starting analysis of: " + getAnalysisName());
 
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() throws Exception {
                 try {
-                    String xmlPath = selectedJarFile.getAbsolutePath().replace(".jar", "_dependencies.xml");
-                    System.out.println("Generating dependency XML...");
-                    parser.runDependencyFinder(selectedJarFile.getAbsolutePath(), xmlPath);
+                    System.out.println("Reading class files...");
+                    parser.setParallelism(Integer.getInteger("analysis.threads", Runtime.getRuntime().availableProcessors()));
+                    parser.setAnalysisCache(new AnalysisCache(AnalysisCache.defaultDirectory()));
+                    parser.analyzeClasspath(selectedJarFiles);
+                    if (!parser.getUnresolvedClasses().isEmpty()) {
+                        System.out.println(parser.getUnresolvedClasses().size() + " referenced classes were not found; add their JARs to resolve them");
+                    }
+                    modelReady();
+                } catch (Exception e) {
+                    Platform.runLater(() -> System.err.println("Error: " + e.getMessage()));
+                    e.printStackTrace();
+                } finally {
+                    System.out.println("Parsing finished");
+                    Platform.runLater(() -> taskFinished());
+                }
+                return null;
+            }
+        };
 
-                    System.out.println("Parsing XML...");
-                    parser.parseXML(new File(xmlPath), selectedJarFile.getAbsolutePath());
+        executor.submit(task);
+    }
 
-                    Platform.runLater(() -> {
-                        if (parser.hasConcreteDependencies()) {
-                            showBadDesignReport();
-                        } else {
-                            currentMaxDepth = parser.getGlobalMaxDepth();
-                            SpinnerValueFactory.IntegerSpinnerValueFactory valueFactory =
-                                    new SpinnerValueFactory.IntegerSpinnerValueFactory(
-                                            1, Math.max(1, currentMaxDepth - 1), 1);
-                            grayBoxLevel.setValueFactory(valueFactory);
-
-                            btnPrintStructure.setDisable(false);
-                            btnGenerateDiagram.setDisable(false);
-                            visualizationMode.setDisable(false);
-                            grayBoxLevel.setDisable(!"Gray-Box".equals(visualizationMode.getValue()));
-                        }
-                    });
+    // Opens a model saved by a batch run (--save-model) instead of analyzing JARs
+    private void openModel() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Model");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Component Models", "*." + ModelFile.EXTENSION));
+        File file = fileChooser.showOpenDialog(primaryStage);
+        if (file == null) {
+            return;
+        }
+        stopWatching();
+        selectedJarFiles = null;
+        openedModel = file;
+        parser = new DependencyParser();
+        clearOutput();
+        metricsArea.clear();
+        taskStarted();
+        System.out.println("Opening model: " + file.getAbsolutePath());
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                try {
+                    parser.loadModel(file.toPath());
+                    modelReady();
                 } catch (Exception e) {
                     Platform.runLater(() -> System.err.println("Error: " + e.getMessage()));
                     e.printStackTrace();
                 } finally {
-                    System.out.println("Parsing finished");
-                    Platform.runLater(() -> setControlsDisabled(false));
+                    Platform.runLater(() -> taskFinished());
                 }
                 return null;
             }
@@ -228,15 +387,128 @@ public class DependencyParserGUI extends Application {
         executor.submit(task);
     }
 
-    private void printStructure() {
-        outputArea.clear();
-        System.out.println("\n=== Detailed Program Structure ===");
-        parser.printComponents();
+    // Called on the worker thread once the parser holds a model, analyzed or opened
+    private void modelReady() {
+        ModelSnapshot analyzed = parser.snapshot();
+        snapshot = analyzed;
+        PackageCycles cycles = parser.findPackageCycles(analyzed);
+        if (!cycles.isEmpty()) {
+            System.out.println(cycles.getCycles().size() + " package dependency cycles:");
+            cycles.report().forEach(System.out::println);
+        }
+
+        Platform.runLater(() -> {
+            showMetrics();
+            if (parser.hasConcreteDependencies()) {
+                showBadDesignReport();
+            } else {
+                currentMaxDepth = analyzed.getGlobalMaxDepth();
+                SpinnerValueFactory.IntegerSpinnerValueFactory valueFactory =
+                        new SpinnerValueFactory.IntegerSpinnerValueFactory(
+                                1, Math.max(1, currentMaxDepth - 1), 1);
+                grayBoxLevel.setValueFactory(valueFactory);
+
+                btnPrintStructure.setDisable(false);
+                btnGenerateDiagram.setDisable(false);
+                visualizationMode.setDisable(false);
+                grayBoxLevel.setDisable(!"Gray-Box".equals(visualizationMode.getValue()));
+            }
+        });
+    }
+
+    private String getAnalysisName() {
+        if (selectedJarFiles == null) {
+            return openedModel.getName();
+        }
+        String name = selectedJarFiles.get(0).getName();
+        return selectedJarFiles.size() == 1 ? name : name + " +" + (selectedJarFiles.size() - 1);
+    }
+
+    private void showMetrics() {
+        metricsArea.setText(parser.getMetrics().snapshot().toString());
+    }
+
+    // The package tree of the current snapshot. Items are created when their parent is first
+    // expanded, so opening the window costs one item per root package whatever the model size.
+    private void showStructure() {
+        ModelSnapshot model = snapshot;
+        if (model == null) {
+            return;
+        }
+        TreeItem<String> root = new TreeItem<>("Program Structure");
+        for (Component component : model.getRoots()) {
+            root.getChildren().add(componentItem(component));
+        }
+        root.setExpanded(true);
+
+        TreeView<String> treeView = new TreeView<>(root);
+        treeView.setShowRoot(false);
+        treeView.setStyle("-fx-font-family: monospace;");
+
+        Stage dialog = new Stage();
+        dialog.setTitle("Program Structure");
+        dialog.initModality(Modality.NONE);
+        dialog.initOwner(primaryStage);
+        dialog.setScene(new Scene(treeView, 700, 600));
+        dialog.show();
+    }
+
+    private static TreeItem<String> componentItem(Component component) {
+        return new LazyTreeItem(component.getName() + "  (" + component.getComposedPartIds().size() + " classes)", false, () -> {
+            List<TreeItem<String>> children = new ArrayList<>();
+            children.add(namesItem("Composed Parts", component.getComposedParts()));
+            children.add(namesItem("Provided Interfaces", component.getProvidedInterfaces()));
+            children.add(namesItem("Required Interfaces", component.getRequiredInterfaces()));
+            children.add(namesItem("Concrete Dependencies", component.getConcreteDependencies()));
+            List<Component> subPackages = new ArrayList<>(component.getSubPackages().values());
+            subPackages.sort(Comparator.comparing(Component::getName));
+            for (Component subPackage : subPackages) {
+                children.add(componentItem(subPackage));
+            }
+            return children;
+        });
+    }
+
+    private static TreeItem<String> namesItem(String label, Set<String> names) {
+        return new LazyTreeItem(label + " (" + names.size() + ")", names.isEmpty(), () -> {
+            List<TreeItem<String>> children = new ArrayList<>(names.size());
+            for (String name : new TreeSet<>(names)) {
+                children.add(new TreeItem<>(name));
+            }
+            return children;
+        });
+    }
+
+    // Fills in its children the first time the tree asks for them
+    private static class LazyTreeItem extends TreeItem<String> {
+        private final boolean leaf;
+        private Supplier<List<TreeItem<String>>> children;
+
+        LazyTreeItem(String label, boolean leaf, Supplier<List<TreeItem<String>>> children) {
+            super(label);
+            this.leaf = leaf;
+            this.children = children;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return leaf;
+        }
+
+        @Override
+        public ObservableList<TreeItem<String>> getChildren() {
+            if (children != null) {
+                Supplier<List<TreeItem<String>>> pending = children;
+                children = null;
+                super.getChildren().setAll(pending.get());
+            }
+            return super.getChildren();
+        }
     }
 
     private void generateDiagramInBackground() {
-        setControlsDisabled(true);
-        outputArea.clear();
+        taskStarted();
+        clearOutput();
         System.out.println("Generating diagram...");
 
         Task<Void> task = new Task<>() {
@@ -249,29 +521,37 @@ public class DependencyParserGUI extends Application {
                         default -> UMLGenerator.VisualizationMode.BLACK_BOX;
                     };
 
-                    // Create the generator using the factory
-                    UMLGenerator generator = UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML);
-                    String umlText = generator.generateUML(
-                            parser.getComponents(),
-                            visMode,
-                            grayBoxLevel.getValue(),
-                            parser.getGlobalMaxDepth()
-                    );
-
-                    String pumlPath = parser.saveAndGenerateDiagram(umlText, "component_diagram");
+                    AnalysisMetrics metrics = parser.getMetrics();
+                    Path source;
+                    UMLGenerator.View view = new UMLGenerator.View(visMode, grayBoxLevel.getValue());
+                    try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.GENERATE, getAnalysisName())) {
+                        source = writeSource(snapshot, view);
+                        timer.model(snapshot.getComponentList());
+                    }
+                    lastView = view;
+
+                    // Views rendered before come straight from the cache.
+                    // SVG rather than PNG: the viewer draws only what is on screen, at any zoom.
+                    byte[] svg;
+                    try (AnalysisMetrics.Timer timer = metrics.start(AnalysisMetrics.Phase.RENDER, getAnalysisName())) {
+                        svg = getRenderCache().render(source, DiagramRenderer.OutputFormat.SVG);
+                        timer.model(snapshot.getComponentList());
+                    } finally {
+                        Files.deleteIfExists(source);
+                    }
+                    SvgScene diagram = SvgScene.parse(new ByteArrayInputStream(svg));
+                    System.out.println(diagram.size() + " shapes");
+                    Platform.runLater(() -> showMetrics());
 
                     // Show the generated diagram
-                    Platform.runLater(() -> {
-                        String imagePath = pumlPath.replace(".puml", ".png");
-                        showDiagramPopup(imagePath);
-                    });
+                    Platform.runLater(() -> showDiagramPopup(diagram));
                 } catch (Exception e) {
                     Platform.runLater(() -> {
                         System.err.println("Diagram error: " + e.getMessage());
                         e.printStackTrace();
                     });
                 } finally {
-                    Platform.runLater(() -> setControlsDisabled(false));
+                    Platform.runLater(() -> taskFinished());
                 }
                 return null;
             }
@@ -280,28 +560,63 @@ public class DependencyParserGUI extends Application {
         executor.submit(task);
     }
 
-    private void showDiagramPopup(String imagePath) {
-        try {
-            // Load and display the generated diagram image
-            FileInputStream fis = new FileInputStream(imagePath);
-            Image img = new Image(fis);
-
-            ImageView imageView = new ImageView(img);
-            imageView.setPreserveRatio(true);
-            imageView.setFitWidth(1000);
-            imageView.setFitHeight(800);
-
-            ScrollPane scrollPane = new ScrollPane(imageView);
-            scrollPane.setPrefSize(1000, 800);
-
-            Stage dialog = new Stage();
-            dialog.setTitle("Component Diagram");
-            dialog.initModality(Modality.NONE);
-            dialog.setScene(new Scene(scrollPane));
-            dialog.show();
-        } catch (IOException e) {
-            System.err.println("Error loading image: " + e.getMessage());
+    // Streams the view into a temporary .puml file, which the render cache hashes and renders
+    // without the text ever being held as a whole
+    private static Path writeSource(ModelSnapshot snapshot, UMLGenerator.View view) throws IOException {
+        Path source = Files.createTempFile("diagram", ".puml");
+        try (Writer writer = Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+            UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML).writeUML(snapshot, view, writer);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(source);
+            throw e;
         }
+        return source;
+    }
+
+    // Created on first use, from the background task, as it scans the cache directory
+    private synchronized RenderCache getRenderCache() throws IOException {
+        if (renderCache == null) {
+            renderCache = new RenderCache(
+                    DiagramRendererFactory.createRenderer(DiagramRendererFactory.RendererType.EMBEDDED),
+                    RenderCache.defaultDirectory(),
+                    RENDER_CACHE_MEMORY_BYTES,
+                    RENDER_CACHE_DISK_BYTES);
+        }
+        return renderCache;
+    }
+
+    private void showDiagramPopup(SvgScene diagram) {
+        DiagramViewer viewer = new DiagramViewer();
+        viewer.setScene(diagram, false);
+
+        TextField searchField = new TextField();
+        searchField.setPromptText("Find component");
+        Label matchLabel = new Label();
+        // Enter again goes to the next match
+        searchField.setOnAction(e -> {
+            int count = viewer.showNext(searchField.getText());
+            matchLabel.setText(searchField.getText().isBlank() ? "" : count == 0 ? "Not found" : count + " matches");
+        });
+        Button btnFit = new Button("Fit");
+        btnFit.setOnAction(e -> viewer.fit());
+        HBox toolbar = new HBox(10, searchField, btnFit, matchLabel);
+        toolbar.setPadding(new Insets(5));
+
+        BorderPane root = new BorderPane(viewer);
+        root.setTop(toolbar);
+
+        Stage dialog = new Stage();
+        dialog.setTitle("Component Diagram");
+        dialog.initModality(Modality.NONE);
+        dialog.setScene(new Scene(root, 1000, 800));
+        // While watching, updates replace the diagram of the most recent diagram window
+        diagramViewer = viewer;
+        dialog.setOnHidden(e -> {
+            if (diagramViewer == viewer) {
+                diagramViewer = null;
+            }
+        });
+        dialog.show();
     }
 
     private void showBadDesignReport() {
@@ -335,9 +650,26 @@ public class DependencyParserGUI extends Application {
         dialog.showAndWait();
     }
 
+    private void taskStarted() {
+        runningTasks++;
+        setControlsDisabled(true);
+    }
+
+    private void taskFinished() {
+        runningTasks--;
+        if (runningTasks == 0) {
+            setControlsDisabled(false);
+        }
+    }
+
+    // While a folder is watched, its watcher thread owns the parser, so nothing may analyze into
+    // it: Analyze, Open Model and Watch stay disabled until Load JAR stops the watcher
     private void setControlsDisabled(boolean disabled) {
+        boolean watching = watcher != null;
         btnLoadJar.setDisable(disabled);
-        btnAnalyze.setDisable(disabled || selectedJarFile == null);
+        btnOpenModel.setDisable(disabled || watching);
+        btnWatch.setDisable(disabled || watching);
+        btnAnalyze.setDisable(disabled || watching || selectedJarFiles == null);
         btnPrintStructure.setDisable(disabled);
         btnGenerateDiagram.setDisable(disabled);
         visualizationMode.setDisable(disabled);
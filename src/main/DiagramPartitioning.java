@@ -0,0 +1,158 @@
+package main;
+
+import java.util.*;
+
+// Splits a model into partitions that are drawn as separate diagrams, since layout time grows
+// much faster than the number of components. Every root component starts a partition. A subtree
+// with more than maxComponents components is split: the component keeps as many of its child
+// subtrees as fit, in name order, and each remaining child is partitioned the same way.
+// Edges between partitions are drawn as stubs by the generator.
+public final class DiagramPartitioning {
+
+    public static final class Partition {
+        private final String name;
+        private final String fileName;
+        private final List<Component> components = new ArrayList<>();
+        private final List<Component> roots = new ArrayList<>();
+        private final Set<Component> members = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private Partition(String name, String fileName) {
+            this.name = name;
+            this.fileName = fileName;
+        }
+
+        // Name of the component the partition starts at
+        public String getName() {
+            return name;
+        }
+
+        // Unique within the partitioning and safe as a file name
+        public String getFileName() {
+            return fileName;
+        }
+
+        // Components in name order
+        public List<Component> getComponents() {
+            return components;
+        }
+
+        // Components whose parent is not in the partition; the diagram nests the others inside them
+        public List<Component> getRoots() {
+            return roots;
+        }
+
+        public boolean contains(Component component) {
+            return members.contains(component);
+        }
+    }
+
+    private final ModelSnapshot snapshot;
+    private final List<Partition> partitions = new ArrayList<>();
+    private final Map<Component, Partition> partitionsByComponent = new IdentityHashMap<>();
+    // Component -> number of components in its subtree, itself included
+    private final Map<Component, Integer> subtreeSizes = new IdentityHashMap<>();
+    private final Set<String> fileNames = new HashSet<>();
+
+    private DiagramPartitioning(ModelSnapshot snapshot, int maxComponents) {
+        this.snapshot = snapshot;
+        for (Component root : snapshot.getRoots()) {
+            split(root, maxComponents);
+        }
+        // Components their parent does not list as sub-packages
+        for (Component component : snapshot.getComponentList()) {
+            if (!partitionsByComponent.containsKey(component)) {
+                split(component, maxComponents);
+            }
+        }
+        for (Partition partition : partitions) {
+            partition.components.sort(Comparator.comparing(Component::getName));
+            for (Component component : partition.components) {
+                Component parent = snapshot.getParent(component);
+                if (parent == null || !partition.contains(parent)) {
+                    partition.roots.add(component);
+                }
+            }
+        }
+    }
+
+    public static DiagramPartitioning of(ModelSnapshot snapshot, int maxComponents) {
+        if (maxComponents < 1) {
+            throw new IllegalArgumentException("A partition needs room for at least one component: " + maxComponents);
+        }
+        return new DiagramPartitioning(snapshot, maxComponents);
+    }
+
+    public ModelSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // In the order of the root components, each before the partitions split off from it
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    public Partition getPartition(Component component) {
+        return partitionsByComponent.get(component);
+    }
+
+    private void split(Component top, int maxComponents) {
+        String name = top.getName().isEmpty() ? "default" : top.getName();
+        String fileName = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        for (int n = 2; !fileNames.add(fileName.toLowerCase(Locale.ROOT)); n++) {
+            fileName = name.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + n;
+        }
+        Partition partition = new Partition(name, fileName);
+        partitions.add(partition);
+
+        add(partition, top);
+        int size = 1;
+        List<Component> splitOff = new ArrayList<>();
+        for (Component child : children(top)) {
+            if (size + subtreeSize(child) <= maxComponents) {
+                addSubtree(partition, child);
+                size += subtreeSize(child);
+            } else {
+                splitOff.add(child);
+            }
+        }
+        for (Component child : splitOff) {
+            split(child, maxComponents);
+        }
+    }
+
+    private void addSubtree(Partition partition, Component component) {
+        add(partition, component);
+        for (Component child : children(component)) {
+            addSubtree(partition, child);
+        }
+    }
+
+    private void add(Partition partition, Component component) {
+        partition.components.add(component);
+        partition.members.add(component);
+        partitionsByComponent.put(component, partition);
+    }
+
+    private int subtreeSize(Component component) {
+        Integer size = subtreeSizes.get(component);
+        if (size == null) {
+            size = 1;
+            for (Component child : children(component)) {
+                size += subtreeSize(child);
+            }
+            subtreeSizes.put(component, size);
+        }
+        return size;
+    }
+
+    private static List<Component> children(Component component) {
+        List<Component> children = new ArrayList<>();
+        for (Component child : component.getSubPackages().values()) {
+            if (child != null) {
+                children.add(child);
+            }
+        }
+        children.sort(Comparator.comparing(Component::getName));
+        return children;
+    }
+}
@@ -0,0 +1,59 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public interface DiagramRenderer {
+    enum OutputFormat {
+        PNG("png"), SVG("svg");
+
+        private final String extension;
+
+        OutputFormat(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    // Renders PlantUML source text into the bytes of an image in the given format
+    byte[] render(String umlText, OutputFormat format) throws IOException;
+
+    // Renders the PlantUML source in umlFile into imageFile, without reading it into a String
+    void renderFile(Path umlFile, Path imageFile, OutputFormat format) throws IOException;
+
+    // Renders several diagrams concurrently on the executor, keeping the keys of umlTexts
+    default <K> Map<K, byte[]> renderAll(Map<K, String> umlTexts, OutputFormat format, ExecutorService executor) throws IOException {
+        List<K> keys = new ArrayList<>(umlTexts.keySet());
+        List<Future<byte[]>> images = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            String umlText = umlTexts.get(key);
+            images.add(executor.submit(() -> render(umlText, format)));
+        }
+        Map<K, byte[]> rendered = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                rendered.put(keys.get(i), images.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            images.forEach(image -> image.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Rendering interrupted");
+        } catch (ExecutionException e) {
+            images.forEach(image -> image.cancel(true));
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Rendering failed", e.getCause());
+        }
+        return rendered;
+    }
+}
@@ -0,0 +1,77 @@
+package main;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Locale;
+
+public class DiagramRendererFactory {
+    public enum RendererType {
+        EMBEDDED,
+        PROCESS
+    }
+
+    private static EmbeddedPlantUMLRenderer embeddedRenderer;
+
+    public static DiagramRenderer createRenderer(RendererType type) {
+        switch (type) {
+            case EMBEDDED:
+                return getEmbeddedRenderer();
+            case PROCESS:
+                return new ProcessPlantUMLRenderer(getPlantUmlJar());
+            default:
+                throw new IllegalArgumentException("Unknown renderer type: " + type);
+        }
+    }
+
+    // One embedded renderer per JVM, so PlantUML is loaded and warmed up only once
+    public static synchronized EmbeddedPlantUMLRenderer getEmbeddedRenderer() {
+        if (embeddedRenderer == null) {
+            embeddedRenderer = new EmbeddedPlantUMLRenderer(getPlantUmlJar());
+        }
+        return embeddedRenderer;
+    }
+
+    // Location of plantuml.jar: -Dplantuml.jar=..., else a plantuml*.jar on the class path or
+    // module path, else plantuml.jar next to the application, else in the working directory
+    public static File getPlantUmlJar() {
+        String configured = System.getProperty("plantuml.jar");
+        if (configured != null) {
+            return new File(configured);
+        }
+        for (String property : List.of("java.class.path", "jdk.module.path")) {
+            String path = System.getProperty(property);
+            if (path == null || path.isEmpty()) {
+                continue;
+            }
+            for (String entry : path.split(File.pathSeparator)) {
+                File file = new File(entry);
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if (name.startsWith("plantuml") && name.endsWith(".jar") && file.isFile()) {
+                    return file;
+                }
+            }
+        }
+        File applicationDirectory = getApplicationDirectory();
+        if (applicationDirectory != null && new File(applicationDirectory, "plantuml.jar").isFile()) {
+            return new File(applicationDirectory, "plantuml.jar");
+        }
+        return new File("plantuml.jar");
+    }
+
+    // The directory of the JAR the application runs from, or its class directory; null when the
+    // classes do not come from a file, as in a runtime image
+    private static File getApplicationDirectory() {
+        CodeSource source = DiagramRendererFactory.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return null;
+        }
+        try {
+            File location = new File(source.getLocation().toURI());
+            return location.isFile() ? location.getParentFile() : location;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package main;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Shows an SVG diagram on a canvas the size of the window. Each frame draws only the shapes
+// the scene's grid returns for the visible rectangle, at the current zoom, so the cost follows
+// what is on screen rather than the size of the diagram. Drag to pan, scroll to zoom around the
+// pointer, double-click to fit. Text smaller than MIN_TEXT_PIXELS on screen is left out.
+public class DiagramViewer extends Region {
+    private static final double MIN_TEXT_PIXELS = 3;
+    private static final double MAX_SCALE = 8;
+    private static final double ZOOM_STEP = 1.15;
+    private static final Color HIGHLIGHT = Color.web("#FF8C00");
+
+    private final Canvas canvas = new Canvas();
+    private final Map<String, Color> colors = new HashMap<>();
+    private final Map<String, Font> fonts = new HashMap<>();
+    private SvgScene scene;
+    // Screen = (diagram - offset) * scale
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+    private double dragX;
+    private double dragY;
+    private boolean fitted;
+    // Search state: the matches of lastQuery and the one shown
+    private String lastQuery;
+    private List<SvgScene.Shape> matches = List.of();
+    private int matchIndex;
+    private SvgScene.Shape highlighted;
+
+    public DiagramViewer() {
+        getChildren().add(canvas);
+        setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        setOnMouseDragged(e -> {
+            offsetX -= (e.getX() - dragX) / scale;
+            offsetY -= (e.getY() - dragY) / scale;
+            dragX = e.getX();
+            dragY = e.getY();
+            redraw();
+        });
+        setOnScroll(e -> {
+            if (e.getDeltaY() != 0) {
+                zoom(e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP, e.getX(), e.getY());
+            }
+        });
+        setOnMouseClicked(e -> {
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) {
+                fit();
+            }
+        });
+    }
+
+    // Replaces the diagram; with keepView the zoom and position stay, as for a watched model
+    public void setScene(SvgScene scene, boolean keepView) {
+        this.scene = scene;
+        lastQuery = null;
+        matches = List.of();
+        highlighted = null;
+        if (!keepView) {
+            fitted = false;
+        }
+        requestLayout();
+        redraw();
+    }
+
+    public void fit() {
+        if (scene == null || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        scale = Math.min(MAX_SCALE, Math.min(getWidth() / scene.getWidth(), getHeight() / scene.getHeight()));
+        offsetX = (scene.getWidth() - getWidth() / scale) / 2;
+        offsetY = (scene.getHeight() - getHeight() / scale) / 2;
+        fitted = true;
+        redraw();
+    }
+
+    public void zoom(double factor, double pivotX, double pivotY) {
+        if (scene == null) {
+            return;
+        }
+        double minScale = Math.min(getWidth() / scene.getWidth(), getHeight() / scene.getHeight()) / 2;
+        double newScale = Math.max(Math.min(minScale, 1), Math.min(MAX_SCALE, scale * factor));
+        // Keep the diagram point under the pivot where it is
+        offsetX += pivotX / scale - pivotX / newScale;
+        offsetY += pivotY / scale - pivotY / newScale;
+        scale = newScale;
+        redraw();
+    }
+
+    // Centers on the next text containing the query, zoomed in far enough to read it, and
+    // returns the number of matches
+    public int showNext(String query) {
+        if (scene == null || query.isBlank()) {
+            return 0;
+        }
+        if (!query.equals(lastQuery)) {
+            lastQuery = query;
+            matches = scene.findText(query);
+            matchIndex = 0;
+        } else if (!matches.isEmpty()) {
+            matchIndex = (matchIndex + 1) % matches.size();
+        }
+        if (matches.isEmpty()) {
+            highlighted = null;
+            redraw();
+            return 0;
+        }
+        highlighted = matches.get(matchIndex);
+        scale = Math.max(scale, Math.min(MAX_SCALE, 1));
+        offsetX = (highlighted.getMinX() + highlighted.getMaxX()) / 2 - getWidth() / scale / 2;
+        offsetY = (highlighted.getMinY() + highlighted.getMaxY()) / 2 - getHeight() / scale / 2;
+        redraw();
+        return matches.size();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            if (!fitted) {
+                fit();
+            }
+            redraw();
+        }
+    }
+
+    private void redraw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.setFill(Color.WHITE);
+        gc.fillRect(0, 0, width, height);
+        if (scene == null) {
+            return;
+        }
+        gc.setTransform(scale, 0, 0, scale, -offsetX * scale, -offsetY * scale);
+        for (int index : scene.query(offsetX, offsetY, offsetX + width / scale, offsetY + height / scale)) {
+            SvgScene.Shape shape = scene.getShape(index);
+            if (shape.getKind() == SvgScene.Kind.TEXT && shape.getFontSize() * scale < MIN_TEXT_PIXELS) {
+                continue;
+            }
+            draw(gc, shape);
+        }
+        if (highlighted != null) {
+            gc.setStroke(HIGHLIGHT);
+            gc.setLineWidth(3 / scale);
+            double margin = 4 / scale;
+            gc.strokeRect(highlighted.getMinX() - margin, highlighted.getMinY() - margin,
+                    highlighted.getMaxX() - highlighted.getMinX() + 2 * margin,
+                    highlighted.getMaxY() - highlighted.getMinY() + 2 * margin);
+        }
+    }
+
+    private void draw(GraphicsContext gc, SvgScene.Shape shape) {
+        double[] c = shape.getCoords();
+        Color fill = color(shape.getFill());
+        Color stroke = color(shape.getStroke());
+        gc.setLineWidth(shape.getStrokeWidth());
+        if (fill != null) {
+            gc.setFill(fill);
+        }
+        if (stroke != null) {
+            gc.setStroke(stroke);
+        }
+        switch (shape.getKind()) {
+            case RECT:
+                if (c[4] > 0 || c[5] > 0) {
+                    if (fill != null) gc.fillRoundRect(c[0], c[1], c[2], c[3], 2 * c[4], 2 * c[5]);
+                    if (stroke != null) gc.strokeRoundRect(c[0], c[1], c[2], c[3], 2 * c[4], 2 * c[5]);
+                } else {
+                    if (fill != null) gc.fillRect(c[0], c[1], c[2], c[3]);
+                    if (stroke != null) gc.strokeRect(c[0], c[1], c[2], c[3]);
+                }
+                break;
+            case ELLIPSE:
+                if (fill != null) gc.fillOval(c[0] - c[2], c[1] - c[3], 2 * c[2], 2 * c[3]);
+                if (stroke != null) gc.strokeOval(c[0] - c[2], c[1] - c[3], 2 * c[2], 2 * c[3]);
+                break;
+            case LINE:
+            case POLYLINE:
+            case POLYGON: {
+                int n = c.length / 2;
+                double[] xs = new double[n];
+                double[] ys = new double[n];
+                for (int i = 0; i < n; i++) {
+                    xs[i] = c[2 * i];
+                    ys[i] = c[2 * i + 1];
+                }
+                if (shape.getKind() == SvgScene.Kind.POLYGON) {
+                    if (fill != null) gc.fillPolygon(xs, ys, n);
+                    if (stroke != null) gc.strokePolygon(xs, ys, n);
+                } else if (stroke != null) {
+                    gc.strokePolyline(xs, ys, n);
+                }
+                break;
+            }
+            case PATH: {
+                gc.beginPath();
+                int i = 0;
+                for (byte op : shape.getPathOps()) {
+                    switch (op) {
+                        case SvgScene.MOVE:
+                            gc.moveTo(c[i], c[i + 1]);
+                            i += 2;
+                            break;
+                        case SvgScene.LINE_TO:
+                            gc.lineTo(c[i], c[i + 1]);
+                            i += 2;
+                            break;
+                        case SvgScene.QUAD:
+                            gc.quadraticCurveTo(c[i], c[i + 1], c[i + 2], c[i + 3]);
+                            i += 4;
+                            break;
+                        case SvgScene.CUBIC:
+                            gc.bezierCurveTo(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5]);
+                            i += 6;
+                            break;
+                        default:
+                            gc.closePath();
+                    }
+                }
+                if (fill != null) gc.fill();
+                if (stroke != null) gc.stroke();
+                break;
+            }
+            case TEXT:
+                gc.setFont(font(shape));
+                gc.fillText(shape.getText(), c[0], c[1]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape.getKind());
+        }
+    }
+
+    private Color color(String paint) {
+        if (paint == null) {
+            return null;
+        }
+        return colors.computeIfAbsent(paint, value -> {
+            try {
+                return Color.web(value);
+            } catch (IllegalArgumentException e) {
+                // Gradients and other paints PlantUML may reference by url(#id)
+                return Color.GRAY;
+            }
+        });
+    }
+
+    private Font font(SvgScene.Shape text) {
+        String family = text.getFontFamily() != null ? text.getFontFamily() : "SansSerif";
+        String key = family + '/' + text.isBold() + '/' + text.getFontSize();
+        return fonts.computeIfAbsent(key, k -> Font.font(family.equals("sans-serif") ? "SansSerif" : family,
+                text.isBold() ? FontWeight.BOLD : FontWeight.NORMAL, text.getFontSize()));
+    }
+}
@@ -0,0 +1,129 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+
+// Renders inside this JVM through PlantUML's SourceStringReader, or its SourceFileReader for
+// sources already written to a file. plantuml.jar is loaded once,
+// on first use, and the loaded classes stay warm for every later diagram, so only the first
+// render pays for class loading and JIT warm-up. PlantUML is reached through reflection
+// because it is a runtime-only dependency; when it is already on the class path that copy is used.
+public class EmbeddedPlantUMLRenderer implements DiagramRenderer {
+    private final File plantUmlJar;
+
+    private Constructor<?> readerConstructor;
+    private Constructor<?> optionConstructor;
+    private Method outputImage;
+    private Class<?> formatClass;
+    private Method definesForFile;
+    private Constructor<?> fileReaderConstructor;
+    private Method generatedImages;
+    private Method generatedFile;
+
+    public EmbeddedPlantUMLRenderer(File plantUmlJar) {
+        this.plantUmlJar = plantUmlJar;
+    }
+
+    @Override
+    public byte[] render(String umlText, OutputFormat format) throws IOException {
+        initialize();
+        try {
+            Object reader = readerConstructor.newInstance(umlText);
+            Object option = optionConstructor.newInstance(formatConstant(format));
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            outputImage.invoke(reader, image, option);
+            return image.toByteArray();
+        } catch (InvocationTargetException e) {
+            throw new IOException("PlantUML failed to render the diagram", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unsupported PlantUML version in " + plantUmlJar, e);
+        }
+    }
+
+    // PlantUML reads the file itself and writes the image next to imageFile, named after the
+    // source, so it is moved to imageFile when the names differ
+    @Override
+    public void renderFile(Path umlFile, Path imageFile, OutputFormat format) throws IOException {
+        initialize();
+        Path outputDirectory = imageFile.toAbsolutePath().getParent();
+        try {
+            Object defines = definesForFile.invoke(null, umlFile.toFile());
+            Object option = optionConstructor.newInstance(formatConstant(format));
+            Object reader = fileReaderConstructor.newInstance(defines, umlFile.toFile(), outputDirectory.toFile(),
+                    Collections.emptyList(), StandardCharsets.UTF_8.name(), option);
+            List<?> images = (List<?>) generatedImages.invoke(reader);
+            if (images.isEmpty()) {
+                throw new IOException("No diagram found in " + umlFile);
+            }
+            Path generated = ((File) generatedFile.invoke(images.get(0))).toPath();
+            if (!generated.toAbsolutePath().equals(imageFile.toAbsolutePath())) {
+                Files.move(generated, imageFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (InvocationTargetException e) {
+            throw new IOException("PlantUML failed to render " + umlFile, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unsupported PlantUML version in " + plantUmlJar, e);
+        }
+    }
+
+    // Loads PlantUML and renders a trivial diagram so the first real render is already warm
+    public void warmUp() throws IOException {
+        render("@startuml\ncomponent warmup\n@enduml\n", OutputFormat.PNG);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object formatConstant(OutputFormat format) {
+        return Enum.valueOf((Class) formatClass, format.name());
+    }
+
+    private synchronized void initialize() throws IOException {
+        if (outputImage != null) {
+            return;
+        }
+        try {
+            ClassLoader loader = findPlantUML();
+            Class<?> readerClass = Class.forName("net.sourceforge.plantuml.SourceStringReader", true, loader);
+            Class<?> optionClass = Class.forName("net.sourceforge.plantuml.FileFormatOption", true, loader);
+            formatClass = Class.forName("net.sourceforge.plantuml.FileFormat", true, loader);
+            readerConstructor = readerClass.getConstructor(String.class);
+            optionConstructor = optionClass.getConstructor(formatClass);
+            Class<?> definesClass = Class.forName("net.sourceforge.plantuml.preproc.Defines", true, loader);
+            definesForFile = definesClass.getMethod("createWithFileName", File.class);
+            Class<?> fileReaderClass = Class.forName("net.sourceforge.plantuml.SourceFileReader", true, loader);
+            fileReaderConstructor = fileReaderClass.getConstructor(definesClass, File.class, File.class, List.class, String.class, optionClass);
+            generatedImages = fileReaderClass.getMethod("getGeneratedImages");
+            generatedFile = Class.forName("net.sourceforge.plantuml.GeneratedImage", true, loader).getMethod("getPngFile");
+            // Set last: initialize() is done once outputImage is set
+            outputImage = readerClass.getMethod("outputImage", OutputStream.class, optionClass);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unsupported PlantUML version in " + plantUmlJar, e);
+        }
+    }
+
+    private ClassLoader findPlantUML() throws IOException {
+        try {
+            Class.forName("net.sourceforge.plantuml.SourceStringReader", false, getClass().getClassLoader());
+            return getClass().getClassLoader();
+        } catch (ClassNotFoundException e) {
+            // not on the class path, load it from the jar below
+        }
+        if (!plantUmlJar.isFile()) {
+            throw new IOException("PlantUML not found: " + plantUmlJar);
+        }
+        // Kept open for the lifetime of the renderer, which is what keeps PlantUML warm
+        return new URLClassLoader(new URL[]{ plantUmlJar.toURI().toURL() }, ClassLoader.getPlatformClassLoader());
+    }
+}
@@ -0,0 +1,195 @@
+package main;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Open addressing hash set of non-negative ints (symbol ids). No boxing, one int per slot,
+// and no table at all while the set is empty, which most component relations are.
+public class IntSet {
+    private static final int FREE = -1;
+    private static final int[] EMPTY_TABLE = new int[0];
+
+    private int[] table = EMPTY_TABLE;
+    private int size;
+    private boolean frozen;
+    // Iteration order of a frozen set once sortBy fixed it; null for table order
+    private int[] order;
+
+    // After freezing every modification throws, so the set can be shared between threads
+    public IntSet freeze() {
+        frozen = true;
+        return this;
+    }
+
+    // Fixes the iteration order of a frozen set to ascending rank[value], so forEach and toArray
+    // no longer depend on where values happened to land in the table
+    public IntSet sortBy(int[] rank) {
+        if (!frozen) {
+            throw new IllegalStateException("Only a frozen IntSet can be sorted");
+        }
+        long[] keys = new long[size];
+        int i = 0;
+        for (int value : table) {
+            if (value != FREE) {
+                keys[i++] = (long) rank[value] << 32 | value;
+            }
+        }
+        Arrays.sort(keys);
+        int[] sorted = new int[size];
+        for (i = 0; i < size; i++) {
+            sorted[i] = (int) keys[i];
+        }
+        order = sorted;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public boolean add(int value) {
+        checkModifiable();
+        checkValue(value);
+        if ((size + 1) * 4 > table.length * 3) {
+            resize(Math.max(8, table.length * 2));
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        size++;
+        return true;
+    }
+
+    public boolean addAll(IntSet other) {
+        boolean changed = false;
+        for (int value : other.table) {
+            if (value != FREE) {
+                changed |= add(value);
+            }
+        }
+        return changed;
+    }
+
+    public boolean contains(int value) {
+        if (size == 0 || value < 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != FREE) {
+            if (table[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(int value) {
+        checkModifiable();
+        if (size == 0 || value < 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != value) {
+            if (table[slot] == FREE) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Shift following entries of the same probe run back so lookups never stop early
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (table[next] != FREE) {
+            int home = mix(table[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = FREE;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        checkModifiable();
+        table = EMPTY_TABLE;
+        size = 0;
+    }
+
+    public void forEach(IntConsumer action) {
+        if (order != null) {
+            for (int value : order) {
+                action.accept(value);
+            }
+            return;
+        }
+        for (int value : table) {
+            if (value != FREE) {
+                action.accept(value);
+            }
+        }
+    }
+
+    // Copy of the values in iteration order, safe to iterate while the set is modified
+    public int[] toArray() {
+        if (order != null) {
+            return order.clone();
+        }
+        int[] values = new int[size];
+        int i = 0;
+        for (int value : table) {
+            if (value != FREE) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    private void resize(int capacity) {
+        int[] old = table;
+        table = new int[capacity];
+        Arrays.fill(table, FREE);
+        size = 0;
+        for (int value : old) {
+            if (value != FREE) {
+                add(value);
+            }
+        }
+    }
+
+    private void checkModifiable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("IntSet is frozen");
+        }
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntSet only holds non-negative values: " + value);
+        }
+    }
+
+    // Symbol ids are dense, so spread them before masking
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,368 @@
+package main;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Answers "what kind of class is this" for the classes of a class path - one JAR, or several
+// JARs and class directories analyzed as one - by decoding class file headers on demand. Every
+// class name is resolved once for the whole class path, so references from one JAR into
+// another cost the same as references within a JAR. Classes outside the class path (the JDK)
+// are read from the system class path as plain resources, so no class is ever defined.
+// Lookups are cached and thread-safe.
+// JARs are read through ZipArchive; JARs nested in them (BOOT-INF/lib, WEB-INF/lib) are
+// indexed too, and their entries are named lib/x.jar!/a/B.class. With more than one class
+// path entry every name is prefixed with its entry as well, e.g. api.jar!/a/B.class.
+public class JarClassIndex implements Closeable {
+    private static final ClassFileInfo MISSING = new ClassFileInfo("", 0, null, java.util.List.of());
+    // Layouts that keep the application classes under a prefix instead of the JAR root
+    private static final String[] CLASS_ROOTS = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+
+    // Where a class file lives: a JAR, a JAR nested in it or a class directory
+    private static final class Location {
+        final ZipArchive archive;
+        final ZipArchive.Entry entry;
+        final Path file;
+        final long crc;
+        final long size;
+        final long compressedSize;
+
+        Location(ZipArchive archive, ZipArchive.Entry entry) {
+            this.archive = archive;
+            this.entry = entry;
+            this.file = null;
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+            this.compressedSize = entry.getCompressedSize();
+        }
+
+        // Plain files have no CRC; modification time and size stand in for it in the caches
+        Location(Path file, BasicFileAttributes attributes) {
+            this.archive = null;
+            this.entry = null;
+            this.file = file;
+            this.crc = (attributes.lastModifiedTime().toMillis() * 31 + attributes.size()) & 0xFFFFFFFFL;
+            this.size = attributes.size();
+            this.compressedSize = attributes.size();
+        }
+
+        InputStream open() throws IOException {
+            return archive != null ? archive.getInputStream(entry) : new BufferedInputStream(Files.newInputStream(file));
+        }
+    }
+
+    // Class path entry -> prefix of its entry names, in class path order
+    private final Map<File, String> roots = new LinkedHashMap<>();
+    private final List<ZipArchive> archives = new ArrayList<>();
+    // Built once in the constructor and only read afterwards
+    private final Map<String, Location> classEntries = new HashMap<>();
+    // Class resource name (a/b/C.class) -> location; the first class path entry wins, and
+    // within a JAR the outer JAR wins over nested ones, as for a class loader
+    private final Map<String, Location> resources = new HashMap<>();
+    private final Map<String, ClassFileInfo> cache = new ConcurrentHashMap<>();
+    // Class files hidden by an earlier class file of the same name
+    private int shadowedClasses;
+    // Class files decoded and the bytes consumed doing so, for AnalysisMetrics
+    private final AtomicLong classesRead = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public JarClassIndex(File jar) throws IOException {
+        this(jar, true);
+    }
+
+    public JarClassIndex(File jar, boolean includeNestedJars) throws IOException {
+        this(List.of(jar), includeNestedJars);
+    }
+
+    // JARs and class directories; a class found in several of them is taken from the first
+    public JarClassIndex(List<File> classpath, boolean includeNestedJars) throws IOException {
+        this(classpath, 0, includeNestedJars);
+    }
+
+    // As above, but the entries before firstListed are only looked up: their classes hide the
+    // classes of the same name in later entries and answer find(), but they are neither roots
+    // nor class entries. A shard of a class path analyzes its entries this way, behind the
+    // entries of the shards before it.
+    public JarClassIndex(List<File> classpath, int firstListed, boolean includeNestedJars) throws IOException {
+        if (firstListed < 0 || firstListed >= classpath.size()) {
+            throw new IllegalArgumentException("No class path entries to list: " + firstListed + " of " + classpath.size() + " are lookup only");
+        }
+        Set<File> seen = new HashSet<>();
+        Set<String> labels = new HashSet<>();
+        try {
+            for (int index = 0; index < classpath.size(); index++) {
+                File root = classpath.get(index);
+                if (!seen.add(root)) {
+                    continue;
+                }
+                String prefix = "";
+                if (classpath.size() > 1) {
+                    String label = root.getName();
+                    for (int i = 2; !labels.add(label); i++) {
+                        label = root.getName() + "#" + i;
+                    }
+                    prefix = label + "!/";
+                }
+                boolean listed = index >= firstListed;
+                if (listed) {
+                    roots.put(root, prefix);
+                }
+                if (root.isDirectory()) {
+                    indexDirectory(root.toPath(), prefix, listed);
+                } else {
+                    ZipArchive archive = ZipArchive.open(root);
+                    archives.add(archive);
+                    index(archive, prefix, includeNestedJars, listed);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // The class path entries in order, without duplicates
+    public List<File> getRoots() {
+        return new ArrayList<>(roots.keySet());
+    }
+
+    // What the entry names of a class path entry start with, "" for a single entry
+    public String getEntryPrefix(File root) {
+        String prefix = roots.get(root);
+        if (prefix == null) {
+            throw new IllegalArgumentException("Not on the class path: " + root);
+        }
+        return prefix;
+    }
+
+    public int getShadowedClasses() {
+        return shadowedClasses;
+    }
+
+    private void index(ZipArchive zip, String prefix, boolean includeNestedJars, boolean listed) throws IOException {
+        List<ZipArchive.Entry> nestedJars = new ArrayList<>();
+        for (ZipArchive.Entry entry : zip.getEntries()) {
+            String name = entry.getName();
+            if (isClassEntry(name)) {
+                add(prefix + name, resourceName(name), new Location(zip, entry), listed);
+            } else if (includeNestedJars && name.endsWith(".jar") && !entry.isDirectory()) {
+                nestedJars.add(entry);
+            }
+        }
+        for (ZipArchive.Entry entry : nestedJars) {
+            ZipArchive nested;
+            try {
+                nested = zip.openNested(entry);
+            } catch (IOException e) {
+                System.err.println("Unreadable nested JAR: " + prefix + entry.getName() + " (" + e.getMessage() + ")");
+                continue;
+            }
+            index(nested, prefix + entry.getName() + "!/", true, listed);
+        }
+    }
+
+    private void indexDirectory(Path directory, String prefix, boolean listed) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = directory.relativize(file).toString().replace(File.separatorChar, '/');
+            if (isClassEntry(name)) {
+                add(prefix + name, name, new Location(file, Files.readAttributes(file, BasicFileAttributes.class)), listed);
+            }
+        }
+    }
+
+    private void add(String entryName, String resourceName, Location location, boolean listed) {
+        if (resources.putIfAbsent(resourceName, location) != null) {
+            if (listed) {
+                shadowedClasses++;
+            }
+            return;
+        }
+        if (listed) {
+            classEntries.put(entryName, location);
+        }
+    }
+
+    // Returns null when the class cannot be found, where a class loader would throw ClassNotFoundException
+    public ClassFileInfo find(String className) {
+        ClassFileInfo info = cache.computeIfAbsent(className, this::load);
+        return info == MISSING ? null : info;
+    }
+
+    // Every name find() did not find so far, in name order
+    public SortedSet<String> getMissingClasses() {
+        SortedSet<String> missing = new TreeSet<>();
+        for (Map.Entry<String, ClassFileInfo> entry : cache.entrySet()) {
+            if (entry.getValue() == MISSING) {
+                missing.add(entry.getKey());
+            }
+        }
+        return missing;
+    }
+
+    // Class file entries of the whole class path in name order. Their CRCs come from the central directory.
+    public List<JarEntry> getClassEntries() {
+        return toJarEntries(new ArrayList<>(classEntries.keySet()));
+    }
+
+    // Class file entries of one class path entry in name order
+    public List<JarEntry> getClassEntries(File root) {
+        String prefix = getEntryPrefix(root);
+        List<String> names = new ArrayList<>();
+        for (String name : classEntries.keySet()) {
+            if (name.startsWith(prefix)) {
+                names.add(name);
+            }
+        }
+        return toJarEntries(names);
+    }
+
+    private List<JarEntry> toJarEntries(List<String> names) {
+        Collections.sort(names);
+        List<JarEntry> entries = new ArrayList<>(names.size());
+        for (String name : names) {
+            Location location = classEntries.get(name);
+            JarEntry jarEntry = new JarEntry(name);
+            jarEntry.setCrc(location.crc);
+            jarEntry.setSize(location.size);
+            jarEntry.setCompressedSize(location.compressedSize);
+            entries.add(jarEntry);
+        }
+        return entries;
+    }
+
+    public long getClassesRead() {
+        return classesRead.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    // Makes a class decoded earlier (e.g. taken from the analysis cache) known to find()
+    public void register(ClassFileInfo info) {
+        cache.put(info.getName(), info);
+    }
+
+    // Reads one class file of the class path together with its dependencies, replacing any header-only
+    // entry in the cache. Returns null when the class file cannot be decoded.
+    public ClassFileInfo readJarClass(JarEntry entry) {
+        Location location = classEntries.get(entry.getName());
+        if (location == null) {
+            System.err.println("No such class file: " + entry.getName());
+            return null;
+        }
+        try (InputStream in = new CountingInputStream(location.open())) {
+            ClassFileInfo info = ClassFileReader.readWithDependencies(in);
+            cache.put(info.getName(), info);
+            return info;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unreadable class file: " + entry.getName() + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    // module-info, package-info and multi-release variants do not describe classes of the model
+    static boolean isClassEntry(String name) {
+        return name.endsWith(".class")
+                && !name.startsWith("META-INF/")
+                && !name.endsWith("module-info.class")
+                && !name.endsWith("package-info.class");
+    }
+
+    private static String resourceName(String entryName) {
+        for (String root : CLASS_ROOTS) {
+            if (entryName.startsWith(root)) {
+                return entryName.substring(root.length());
+            }
+        }
+        return entryName;
+    }
+
+    private ClassFileInfo load(String className) {
+        String resource = className.replace('.', '/') + ".class";
+        try {
+            Location location = resources.get(resource);
+            InputStream in = location != null
+                    ? location.open()
+                    : ClassLoader.getSystemResourceAsStream(resource);
+            if (in == null) {
+                return MISSING;
+            }
+            try (InputStream classStream = new CountingInputStream(in)) {
+                return ClassFileReader.readHeader(classStream);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Unreadable class file: " + resource + " (" + e.getMessage() + ")");
+            return MISSING;
+        }
+    }
+
+    // Counts the bytes the decoder actually consumed; header reads stop early
+    private class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            classesRead.incrementAndGet();
+            bytesRead.addAndGet(count);
+            super.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        IOException failure = null;
+        for (ZipArchive archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        archives.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+// Saved component model (*.cdm), e.g. written by a CI job and opened in the GUI without
+// analyzing again. Layout, all ints big-endian:
+//
+//   header      magic "CDMF", version, string count, component count,
+//               string table offset, component index offset, records offset
+//   strings     an int offset per string, then per string: varint (package string + 1, 0 for
+//               none), varint byte length, UTF-8 bytes of the part after the package
+//   index       per component in name order: int name string, int record offset
+//   records     per component: varint depth; id lists of composed parts, provided interfaces,
+//               required interfaces and concrete dependencies; a list of sub-package indexes;
+//               varint count of implementing classes, each a class id and an id list; an id
+//               list of unresolved references; varint count of unresolved superclasses, each a
+//               class id gap and the superclass id
+//
+// An id list is a varint count followed by the sorted ids as varint gaps. Every name is stored
+// once, unless the writer has forgotten it meanwhile, and shares its package prefix with its
+// siblings. The reader reads the file through a few cached pages and decodes a string or a
+// component only when it is asked for one.
+public final class ModelFile {
+    public static final String EXTENSION = "cdm";
+
+    private static final int MAGIC = 0x43444d46; // "CDMF"
+    // 2 added the unresolved references of shard models; version 1 files are still read
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 28;
+    private static final int RECENT_NAMES = 4096;
+    // Strings the writer remembers; the classes a package references mostly come up again in
+    // the packages next to it, in name order
+    private static final int WRITER_STRINGS = 1 << 16;
+
+    private ModelFile() {
+    }
+
+    // Writes to a temporary file first, so an interrupted write never leaves a truncated model
+    public static void write(Path file, Collection<Component> components) throws IOException {
+        List<Component> sorted = new ArrayList<>(components);
+        sorted.sort(Comparator.comparing(Component::getName));
+        List<String> names = new ArrayList<>(sorted.size());
+        for (Component component : sorted) {
+            names.add(component.getName());
+        }
+        try (Writer writer = new Writer(names)) {
+            for (Component component : sorted) {
+                writer.add(component);
+            }
+            writer.finish(file);
+        }
+    }
+
+    // Takes the components one at a time, in the order of the names given up front, so that a
+    // caller like ModelMerge never holds more than one of them. The records and the strings go
+    // to temporary files as they are encoded, finish() copies them into the model file and
+    // close() deletes them. Only the component names and the last WRITER_STRINGS strings stay
+    // in memory; a string that comes up again after it was forgotten is stored again.
+    public static final class Writer implements Closeable {
+        private final List<String> componentNames;
+        private final int[] nameIds;
+        private final int[] recordOffsets;
+        private final Spill records;
+        private final StringTable strings;
+        private int count;
+
+        // The names of all components, sorted and without duplicates
+        public Writer(List<String> componentNames) throws IOException {
+            this.componentNames = List.copyOf(componentNames);
+            for (int i = 1; i < componentNames.size(); i++) {
+                if (componentNames.get(i - 1).compareTo(componentNames.get(i)) >= 0) {
+                    throw new IllegalArgumentException("Component names not sorted or duplicate at " + componentNames.get(i));
+                }
+            }
+            nameIds = new int[componentNames.size()];
+            recordOffsets = new int[componentNames.size()];
+            records = new Spill(".records");
+            try {
+                strings = new StringTable();
+            } catch (IOException e) {
+                records.close();
+                throw e;
+            }
+        }
+
+        // Only the names of the sub-packages are used, so a partial model may map them to null
+        public void add(Component component) throws IOException {
+            if (count == componentNames.size() || !componentNames.get(count).equals(component.getName())) {
+                throw new IllegalArgumentException("Expected component "
+                        + (count < componentNames.size() ? componentNames.get(count) : "none") + ", got " + component.getName());
+            }
+            SymbolTable symbols = component.getSymbols();
+            nameIds[count] = strings.intern(component.getName());
+            recordOffsets[count] = (int) records.size();
+            records.writeVarint(component.getDepth());
+            writeIds(records, component.getComposedPartIds(), symbols, strings);
+            writeIds(records, component.getProvidedInterfaceIds(), symbols, strings);
+            writeIds(records, component.getRequiredInterfaceIds(), symbols, strings);
+            writeIds(records, component.getConcreteDependencyIds(), symbols, strings);
+            int[] subPackages = new int[component.getSubPackages().size()];
+            int subPackageCount = 0;
+            for (String subPackageName : component.getSubPackages().keySet()) {
+                int index = Collections.binarySearch(componentNames, subPackageName);
+                if (index < 0) {
+                    throw new IllegalArgumentException("Sub-package " + subPackageName + " of " + component.getName() + " is not part of the model");
+                }
+                subPackages[subPackageCount++] = index;
+            }
+            writeSorted(records, subPackages, subPackageCount);
+            // Implementing classes by their id in the file
+            TreeMap<Integer, IntSet> implementations = new TreeMap<>();
+            for (Map.Entry<Integer, IntSet> entry : component.getClassImplementationIds().entrySet()) {
+                implementations.put(strings.intern(symbols.getName(entry.getKey())), entry.getValue());
+            }
+            records.writeVarint(implementations.size());
+            int previous = 0;
+            for (Map.Entry<Integer, IntSet> entry : implementations.entrySet()) {
+                records.writeVarint(entry.getKey() - previous);
+                previous = entry.getKey();
+                writeIds(records, entry.getValue(), symbols, strings);
+            }
+            // Since version 2
+            writeIds(records, component.getUnresolvedReferenceIds(), symbols, strings);
+            TreeMap<Integer, Integer> superclasses = new TreeMap<>();
+            for (Map.Entry<Integer, Integer> entry : component.getUnresolvedSuperclassIds().entrySet()) {
+                superclasses.put(strings.intern(symbols.getName(entry.getKey())), strings.intern(symbols.getName(entry.getValue())));
+            }
+            records.writeVarint(superclasses.size());
+            previous = 0;
+            for (Map.Entry<Integer, Integer> entry : superclasses.entrySet()) {
+                records.writeVarint(entry.getKey() - previous);
+                previous = entry.getKey();
+                records.writeVarint(entry.getValue());
+            }
+            count++;
+        }
+
+        public void finish(Path file) throws IOException {
+            if (count != componentNames.size()) {
+                throw new IllegalStateException("Only " + count + " of " + componentNames.size() + " components were added");
+            }
+            int stringTableOffset = HEADER_SIZE;
+            long componentIndexOffset = stringTableOffset + 4L * strings.size() + strings.data.size();
+            long recordsOffset = componentIndexOffset + 8L * count;
+            if (recordsOffset + records.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model too large for the " + EXTENSION + " format");
+            }
+
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(strings.size());
+                    out.writeInt(count);
+                    out.writeInt(stringTableOffset);
+                    out.writeInt((int) componentIndexOffset);
+                    out.writeInt((int) recordsOffset);
+                    int dataOffset = stringTableOffset + 4 * strings.size();
+                    try (DataInputStream offsets = strings.offsets.read()) {
+                        for (int i = 0; i < strings.size(); i++) {
+                            out.writeInt(dataOffset + offsets.readInt());
+                        }
+                    }
+                    strings.data.copyTo(out);
+                    for (int i = 0; i < count; i++) {
+                        out.writeInt(nameIds[i]);
+                        out.writeInt((int) recordsOffset + recordOffsets[i]);
+                    }
+                    records.copyTo(out);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        // Deletes the temporary files; the model file is complete only after finish()
+        @Override
+        public void close() throws IOException {
+            try {
+                records.close();
+            } finally {
+                strings.close();
+            }
+        }
+    }
+
+    public static Reader open(Path file, SymbolTable symbols) throws IOException {
+        return new Reader(file, symbols);
+    }
+
+    // Materializes components on demand into the symbol table given to open(). Not thread-safe.
+    // Components already returned stay usable after close().
+    public static final class Reader implements Closeable {
+        private final Path file;
+        private final Pages buffer;
+        private final SymbolTable symbols;
+        private final int stringCount;
+        private final int componentCount;
+        private final int stringTableOffset;
+        private final int componentIndexOffset;
+        private final int version;
+        // Decoded lazily; symbolIds holds -1 until the string was interned
+        private final String[] strings;
+        private final int[] symbolIds;
+        private final Component[] components;
+        // Names decoded by readDetached, direct-mapped by string id so that memory stays flat
+        // however much of the file is streamed; the classes of a package share its entry
+        private final int[] recentIds = new int[RECENT_NAMES];
+        private final String[] recentNames = new String[RECENT_NAMES];
+
+        private Reader(Path file, SymbolTable symbols) throws IOException {
+            this.file = file;
+            this.symbols = symbols;
+            buffer = new Pages(file);
+            int recordsOffset;
+            try {
+                if (buffer.size() < HEADER_SIZE || buffer.size() > Integer.MAX_VALUE || buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a model file: " + file);
+                }
+                version = buffer.getInt(4);
+                if (version < 1 || version > FORMAT_VERSION) {
+                    throw new IOException("Unsupported model file version " + version + " in " + file + " (this build reads " + FORMAT_VERSION + ")");
+                }
+                stringCount = buffer.getInt(8);
+                componentCount = buffer.getInt(12);
+                stringTableOffset = buffer.getInt(16);
+                componentIndexOffset = buffer.getInt(20);
+                recordsOffset = buffer.getInt(24);
+            } catch (IOException | UncheckedIOException e) {
+                buffer.close();
+                throw e;
+            }
+            if (stringCount < 0 || componentCount < 0
+                    || stringTableOffset != HEADER_SIZE
+                    || (long) stringTableOffset + 4L * stringCount > componentIndexOffset
+                    || (long) componentIndexOffset + 8L * componentCount != recordsOffset
+                    || recordsOffset > buffer.size()) {
+                buffer.close();
+                throw new IOException("Corrupt model file: " + file);
+            }
+            strings = new String[stringCount];
+            symbolIds = new int[stringCount];
+            Arrays.fill(symbolIds, -1);
+            components = new Component[componentCount];
+            Arrays.fill(recentIds, -1);
+        }
+
+        public int size() {
+            return componentCount;
+        }
+
+        // Closes the file; it can be replaced or deleted right after, also on Windows
+        @Override
+        public void close() throws IOException {
+            buffer.close();
+        }
+
+        // Components are numbered in name order
+        public String getComponentName(int index) {
+            return string(buffer.getInt(componentIndexOffset + 8 * index));
+        }
+
+        // Binary search over the names; -1 when the model has no such component
+        public int indexOf(String name) {
+            int low = 0;
+            int high = componentCount - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = getComponentName(middle).compareTo(name);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        // Null when the model has no such component
+        public Component getComponent(String name) {
+            int index = indexOf(name);
+            return index == -1 ? null : getComponent(index);
+        }
+
+        // Decodes the component, and its sub-packages to link them, on the first call
+        public Component getComponent(int index) {
+            Component component = components[index];
+            if (component == null) {
+                try {
+                    component = readComponent(index);
+                } catch (RuntimeException e) {
+                    throw corrupt(e);
+                }
+            }
+            return component;
+        }
+
+        // A fresh copy of the component interning into target, for callers that stream through
+        // the file: nothing is cached, and the sub-packages are listed by name only, mapped to
+        // null as in a partial model
+        public Component readDetached(int index, SymbolTable target) {
+            try {
+                Component component = new Component(getComponentName(index), target);
+                for (int subPackage : decode(index, component, stringId -> target.intern(detachedName(stringId)))) {
+                    component.addSubPackage(getComponentName(subPackage), null);
+                }
+                return component;
+            } catch (RuntimeException e) {
+                throw corrupt(e);
+            }
+        }
+
+        // Every component, keyed by name, as DependencyParser holds them
+        public Map<String, Component> readAll() throws IOException {
+            Map<String, Component> model = new HashMap<>(componentCount * 2);
+            try {
+                for (int i = 0; i < componentCount; i++) {
+                    Component component = getComponent(i);
+                    model.put(component.getName(), component);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return model;
+        }
+
+        private Component readComponent(int index) {
+            Component component = new Component(getComponentName(index), symbols);
+            components[index] = component;
+            for (int subPackage : decode(index, component, this::symbolId)) {
+                Component child = getComponent(subPackage);
+                component.addSubPackage(child.getName(), child);
+            }
+            return component;
+        }
+
+        // Fills component from its record and returns the indexes of its sub-packages
+        private int[] decode(int index, Component component, IntUnaryOperator ids) {
+            VarintInput in = new VarintInput(buffer, buffer.getInt(componentIndexOffset + 8 * index + 4));
+            component.setDepth(in.readVarint());
+            readIds(in, component.getComposedPartIds(), ids);
+            readIds(in, component.getProvidedInterfaceIds(), ids);
+            readIds(in, component.getRequiredInterfaceIds(), ids);
+            readIds(in, component.getConcreteDependencyIds(), ids);
+            int subPackageCount = in.readVarint();
+            int[] subPackages = new int[subPackageCount];
+            int previous = 0;
+            for (int i = 0; i < subPackageCount; i++) {
+                previous += in.readVarint();
+                subPackages[i] = previous;
+            }
+            int implementationCount = in.readVarint();
+            previous = 0;
+            for (int i = 0; i < implementationCount; i++) {
+                previous += in.readVarint();
+                IntSet interfaces = new IntSet();
+                readIds(in, interfaces, ids);
+                component.getClassImplementationIds().put(ids.applyAsInt(previous), interfaces);
+            }
+            if (version >= 2) {
+                readIds(in, component.getUnresolvedReferenceIds(), ids);
+                int superclassCount = in.readVarint();
+                previous = 0;
+                for (int i = 0; i < superclassCount; i++) {
+                    previous += in.readVarint();
+                    component.getUnresolvedSuperclassIds().put(ids.applyAsInt(previous), ids.applyAsInt(in.readVarint()));
+                }
+            }
+            return subPackages;
+        }
+
+        private void readIds(VarintInput in, IntSet target, IntUnaryOperator ids) {
+            int count = in.readVarint();
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += in.readVarint();
+                target.add(ids.applyAsInt(previous));
+            }
+        }
+
+        private int symbolId(int stringId) {
+            int id = symbolIds[stringId];
+            if (id == -1) {
+                int packageId = new VarintInput(buffer, buffer.getInt(stringTableOffset + 4 * stringId)).readVarint() - 1;
+                id = symbols.intern(string(stringId), packageId == -1 ? -1 : symbolId(packageId));
+                symbolIds[stringId] = id;
+            }
+            return id;
+        }
+
+        private String string(int stringId) {
+            String string = strings[stringId];
+            if (string == null) {
+                string = decodeString(stringId, this::string);
+                strings[stringId] = string;
+            }
+            return string;
+        }
+
+        private String detachedName(int stringId) {
+            String name = strings[stringId];
+            if (name != null) {
+                return name;
+            }
+            int slot = stringId & (RECENT_NAMES - 1);
+            if (recentIds[slot] != stringId) {
+                recentNames[slot] = decodeString(stringId, this::detachedName);
+                recentIds[slot] = stringId;
+            }
+            return recentNames[slot];
+        }
+
+        private String decodeString(int stringId, IntFunction<String> packageNames) {
+            VarintInput in = new VarintInput(buffer, buffer.getInt(stringTableOffset + 4 * stringId));
+            int packageId = in.readVarint() - 1;
+            int length = in.readVarint();
+            byte[] bytes = new byte[length];
+            buffer.get(in.position, bytes);
+            String part = new String(bytes, StandardCharsets.UTF_8);
+            return packageId == -1 ? part : packageNames.apply(packageId) + "." + part;
+        }
+
+        private UncheckedIOException corrupt(RuntimeException e) {
+            return new UncheckedIOException(new IOException("Corrupt model file: " + file, e));
+        }
+    }
+
+    private static void writeIds(Spill out, IntSet ids, SymbolTable symbols, StringTable strings) throws IOException {
+        int[] fileIds = ids.toArray();
+        for (int i = 0; i < fileIds.length; i++) {
+            fileIds[i] = strings.intern(symbols.getName(fileIds[i]));
+        }
+        writeSorted(out, fileIds, fileIds.length);
+    }
+
+    private static void writeSorted(Spill out, int[] values, int count) throws IOException {
+        Arrays.sort(values, 0, count);
+        out.writeVarint(count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            out.writeVarint(values[i] - previous);
+            previous = values[i];
+        }
+    }
+
+    // Strings of the file in id order; a name's package always gets the smaller id. A name is
+    // looked up among the last WRITER_STRINGS strings only and otherwise stored under a new id.
+    private static final class StringTable implements Closeable {
+        private final Map<String, Integer> recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > WRITER_STRINGS;
+            }
+        };
+        // An int offset into data per string
+        private final Spill offsets;
+        private final Spill data;
+        private int size;
+
+        StringTable() throws IOException {
+            offsets = new Spill(".offsets");
+            try {
+                data = new Spill(".strings");
+            } catch (IOException e) {
+                offsets.close();
+                throw e;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        int intern(String name) throws IOException {
+            Integer id = recent.get(name);
+            if (id != null) {
+                return id;
+            }
+            int lastDot = name.lastIndexOf('.');
+            int packageId = lastDot == -1 ? -1 : intern(name.substring(0, lastDot));
+            if (data.size() > Integer.MAX_VALUE) {
+                throw new IOException("Model too large for the " + EXTENSION + " format");
+            }
+            int newId = size++;
+            offsets.writeInt((int) data.size());
+            byte[] bytes = name.substring(lastDot + 1).getBytes(StandardCharsets.UTF_8);
+            data.writeVarint(packageId + 1);
+            data.writeVarint(bytes.length);
+            data.write(bytes);
+            recent.put(name, newId);
+            return newId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                offsets.close();
+            } finally {
+                data.close();
+            }
+        }
+    }
+
+    // A temporary file that is written once from start to end and then read back
+    private static final class Spill implements Closeable {
+        private final Path file;
+        private final DataOutputStream out;
+        private long size;
+
+        Spill(String suffix) throws IOException {
+            file = Files.createTempFile("model", suffix);
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            } catch (IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        // Unsigned LEB128: seven bits per byte, low bits first
+        void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+                size++;
+            }
+            out.write(value);
+            size++;
+        }
+
+        void writeInt(int value) throws IOException {
+            out.writeInt(value);
+            size += 4;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            size += bytes.length;
+        }
+
+        // Ends writing
+        DataInputStream read() throws IOException {
+            out.close();
+            return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        void copyTo(OutputStream target) throws IOException {
+            out.close();
+            Files.copy(file, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Random access to the file through a few cached pages. A mapping would only be released
+    // once it is garbage collected and keeps the file locked on Windows until then, so that
+    // saving over a model that was just loaded fails; closing the channel releases the file.
+    private static final class Pages implements Closeable {
+        private static final int PAGE_BITS = 16;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+        private static final int SLOTS = 16;
+
+        private final FileChannel channel;
+        private final long size;
+        // Direct-mapped by page number
+        private final int[] pageNumbers = new int[SLOTS];
+        private final byte[][] pages = new byte[SLOTS][];
+
+        Pages(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                size = channel.size();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            Arrays.fill(pageNumbers, -1);
+        }
+
+        long size() {
+            return size;
+        }
+
+        byte get(int position) {
+            return page(position)[position & (PAGE_SIZE - 1)];
+        }
+
+        // Big-endian, like DataOutputStream.writeInt
+        int getInt(int position) {
+            return (get(position) & 0xFF) << 24 | (get(position + 1) & 0xFF) << 16
+                    | (get(position + 2) & 0xFF) << 8 | (get(position + 3) & 0xFF);
+        }
+
+        void get(int position, byte[] target) {
+            int copied = 0;
+            while (copied < target.length) {
+                int offset = (position + copied) & (PAGE_SIZE - 1);
+                int count = Math.min(target.length - copied, PAGE_SIZE - offset);
+                System.arraycopy(page(position + copied), offset, target, copied, count);
+                copied += count;
+            }
+        }
+
+        private byte[] page(int position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Position " + position + " outside of " + size + " bytes");
+            }
+            int number = position >>> PAGE_BITS;
+            int slot = number & (SLOTS - 1);
+            if (pageNumbers[slot] != number) {
+                if (pages[slot] == null) {
+                    pages[slot] = new byte[PAGE_SIZE];
+                }
+                long start = (long) number << PAGE_BITS;
+                ByteBuffer page = ByteBuffer.wrap(pages[slot], 0, (int) Math.min(PAGE_SIZE, size - start));
+                pageNumbers[slot] = -1;
+                try {
+                    while (page.hasRemaining()) {
+                        if (channel.read(page, start + page.position()) == -1) {
+                            throw new EOFException("Model file truncated");
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                pageNumbers[slot] = number;
+            }
+            return pages[slot];
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static final class VarintInput {
+        private final Pages buffer;
+        private int position;
+
+        VarintInput(Pages buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = buffer.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed varint at " + position);
+        }
+    }
+}
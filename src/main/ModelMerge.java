@@ -0,0 +1,174 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+
+// Merges the partial models of shards (see ShardedAnalysis) into the model an analysis of their
+// whole class path would have built. A shard cannot classify a class of another shard, so it
+// keeps such references unresolved (DependencyParser.setKeepUnresolvedReferences), and the merge
+// resolves them the way DependencyParser does: a reference to an interface or abstract class
+// becomes a required interface, one to a concrete class a concrete dependency, and a superclass
+// becomes an implementation or, when concrete, a concrete dependency. What no shard defines
+// stays unresolved. ShardedAnalysis analyzes every class in the shard of its first class path
+// entry only, so no two of its shards define the same class; for shards made otherwise, the
+// first one that defines a class wins the classification.
+//
+// The merge walks all shards once in component name order and merges one package at a time
+// into the output. To classify a reference it reads the package of the referenced class from
+// the shards, and keeps the classes of the last KNOWN_PACKAGES packages read that way. Besides
+// those it holds the package names of the model, the package being merged and what
+// ModelFile.Writer keeps (its recent strings); the records and strings of the output go to
+// temporary files. Its memory therefore depends on the number and the size of the packages,
+// not on the number of classes of the whole class path.
+public final class ModelMerge {
+
+    public static final class Result {
+        private int components;
+        private int resolved;
+        private int unresolved;
+
+        public int getComponents() {
+            return components;
+        }
+
+        // References between shards that were classified
+        public int getResolved() {
+            return resolved;
+        }
+
+        // References to classes no shard defines
+        public int getUnresolved() {
+            return unresolved;
+        }
+
+        @Override
+        public String toString() {
+            return components + " packages, " + resolved + " references between shards resolved, " + unresolved + " unresolved";
+        }
+    }
+
+    private static final int KNOWN_PACKAGES = 1024;
+
+    private final List<ModelFile.Reader> shards = new ArrayList<>();
+    // Package -> class -> true for interfaces and abstract classes, false for concrete classes,
+    // least recently used package first
+    private final Map<String, Map<String, Boolean>> kinds = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Boolean>> eldest) {
+            return size() > KNOWN_PACKAGES;
+        }
+    };
+    private final Result result = new Result();
+
+    private ModelMerge() {
+    }
+
+    // Shards in class path order
+    public static Result merge(List<Path> shardFiles, Path output) throws IOException {
+        ModelMerge merge = new ModelMerge();
+        try {
+            for (Path shardFile : shardFiles) {
+                merge.shards.add(ModelFile.open(shardFile, new SymbolTable()));
+            }
+            merge.write(output);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (ModelFile.Reader shard : merge.shards) {
+                shard.close();
+            }
+        }
+        return merge.result;
+    }
+
+    // Null when no shard defines the class
+    private Boolean kind(String className) {
+        int lastDot = className.lastIndexOf('.');
+        String packageName = lastDot == -1 ? "" : className.substring(0, lastDot);
+        Map<String, Boolean> classes = kinds.get(packageName);
+        if (classes == null) {
+            Map<String, Boolean> defined = new HashMap<>();
+            for (ModelFile.Reader shard : shards) {
+                int index = shard.indexOf(packageName);
+                if (index == -1) {
+                    continue;
+                }
+                Component component = shard.readDetached(index, new SymbolTable());
+                SymbolTable symbols = component.getSymbols();
+                component.getComposedPartIds().forEach(id ->
+                        defined.putIfAbsent(symbols.getName(id), component.getProvidedInterfaceIds().contains(id)));
+            }
+            classes = defined;
+            kinds.put(packageName, classes);
+        }
+        return classes.get(className);
+    }
+
+    private void write(Path output) throws IOException {
+        SortedSet<String> names = new TreeSet<>();
+        for (ModelFile.Reader shard : shards) {
+            for (int i = 0; i < shard.size(); i++) {
+                names.add(shard.getComponentName(i));
+            }
+        }
+        try (ModelFile.Writer writer = new ModelFile.Writer(new ArrayList<>(names))) {
+            // Position of every shard in its own, equally sorted, components
+            int[] positions = new int[shards.size()];
+            for (String name : names) {
+                SymbolTable symbols = new SymbolTable();
+                Component merged = new Component(name, symbols);
+                for (int s = 0; s < shards.size(); s++) {
+                    ModelFile.Reader shard = shards.get(s);
+                    if (positions[s] < shard.size() && shard.getComponentName(positions[s]).equals(name)) {
+                        Component part = shard.readDetached(positions[s]++, symbols);
+                        merged.mergeFrom(part);
+                        for (String subPackageName : part.getSubPackages().keySet()) {
+                            merged.addSubPackage(subPackageName, null);
+                        }
+                    }
+                }
+                resolve(merged);
+                writer.add(merged);
+                result.components++;
+            }
+            writer.finish(output);
+        }
+    }
+
+    private void resolve(Component component) {
+        SymbolTable symbols = component.getSymbols();
+        for (int id : component.getUnresolvedReferenceIds().toArray()) {
+            Boolean isAbstract = kind(symbols.getName(id));
+            if (isAbstract == null) {
+                result.unresolved++;
+                continue;
+            }
+            component.getUnresolvedReferenceIds().remove(id);
+            if (isAbstract) {
+                component.getRequiredInterfaceIds().add(id);
+            } else {
+                component.getConcreteDependencyIds().add(id);
+            }
+            result.resolved++;
+        }
+        Iterator<Map.Entry<Integer, Integer>> superclasses = component.getUnresolvedSuperclassIds().entrySet().iterator();
+        while (superclasses.hasNext()) {
+            Map.Entry<Integer, Integer> entry = superclasses.next();
+            Boolean isAbstract = kind(symbols.getName(entry.getValue()));
+            if (isAbstract == null) {
+                result.unresolved++;
+                continue;
+            }
+            superclasses.remove();
+            if (isAbstract) {
+                component.getClassImplementationIds().computeIfAbsent(entry.getKey(), k -> new IntSet()).add(entry.getValue());
+            } else {
+                // As DependencyParser records a concrete superclass: the subclass itself
+                component.getConcreteDependencyIds().add(entry.getKey());
+            }
+            result.resolved++;
+        }
+    }
+}
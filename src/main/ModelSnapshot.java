@@ -0,0 +1,239 @@
+package main;
+
+import java.util.*;
+
+// Immutable copy of an analyzed component graph, taken once after parsing, together with
+// everything generators derive from the whole model (roots, used interfaces, providers).
+// Components are frozen copies sorted by name, so any number of generators can read one
+// snapshot concurrently and the same snapshot always produces the same text. Their relations
+// iterate in name order too, so the text is also the same for every analysis of the same input.
+public final class ModelSnapshot {
+    private final SymbolTable symbols;
+    private final List<Component> components;
+    private final Set<Component> componentSet;
+    private final Map<String, Component> componentsByName;
+    private final List<Component> roots;
+    private final int globalMaxDepth;
+
+    // Interfaces that are implemented or required anywhere
+    private final IntSet usedInterfaces = new IntSet();
+    // Interface id -> providing component, the first one in name order
+    private final Map<Integer, Component> providersByInterface = new HashMap<>();
+    // Required interfaces minus the ones the component implements itself
+    private final Map<Component, IntSet> requiredEdges = new IdentityHashMap<>();
+    // Interfaces implemented by the component's own classes
+    private final Map<Component, IntSet> implementedInterfaces = new IdentityHashMap<>();
+
+    // Hierarchy index for gray-box roll-up: the nearest enclosing component of each component,
+    // and summaries of every subtree (the component and everything below it)
+    private final Map<Component, Component> parents = new IdentityHashMap<>();
+    private final Map<Component, IntSet> subtreeRequiredEdges = new IdentityHashMap<>();
+    private final Map<Component, IntSet> subtreeImplementedInterfaces = new IdentityHashMap<>();
+    // Computed on first use; two threads may both compute it, with the same result
+    private volatile PackageCycles packageCycles;
+
+    private ModelSnapshot(Collection<Component> source, int globalMaxDepth) {
+        symbols = source.isEmpty() ? new SymbolTable() : source.iterator().next().getSymbols();
+
+        List<Component> sorted = new ArrayList<>(source);
+        sorted.sort(Comparator.comparing(Component::getName));
+        Map<String, Component> copies = new LinkedHashMap<>(sorted.size() * 2);
+        for (Component component : sorted) {
+            copies.putIfAbsent(component.getName(), component.frozenCopy(symbols));
+        }
+        int[] rank = nameRanks(copies.values());
+        for (Component copy : copies.values()) {
+            copy.sortIds(rank);
+        }
+        for (Component component : sorted) {
+            component.linkFrozenSubPackages(copies);
+        }
+
+        components = List.copyOf(copies.values());
+        componentSet = Collections.unmodifiableSet(new LinkedHashSet<>(components));
+        componentsByName = Collections.unmodifiableMap(copies);
+
+        List<Component> rootList = new ArrayList<>();
+        int maxDepth = 0;
+        for (Component component : components) {
+            String parentName = getParentPackage(component.getName());
+            if (parentName == null || !componentsByName.containsKey(parentName)) {
+                rootList.add(component);
+            }
+            maxDepth = Math.max(maxDepth, component.getDepth());
+
+            for (IntSet implemented : component.getClassImplementationIds().values()) {
+                usedInterfaces.addAll(implemented);
+            }
+            usedInterfaces.addAll(component.getRequiredInterfaceIds());
+            component.getProvidedInterfaceIds().forEach(id -> providersByInterface.putIfAbsent(id, component));
+
+            IntSet required = new IntSet();
+            required.addAll(component.getRequiredInterfaceIds());
+            IntSet implementedByClasses = new IntSet();
+            for (IntSet implemented : component.getClassImplementationIds().values()) {
+                implemented.forEach(required::remove);
+                implementedByClasses.addAll(implemented);
+            }
+            requiredEdges.put(component, required.freeze().sortBy(rank));
+            implementedInterfaces.put(component, implementedByClasses.freeze().sortBy(rank));
+        }
+        usedInterfaces.freeze();
+        roots = List.copyOf(rootList);
+        this.globalMaxDepth = globalMaxDepth >= 0 ? globalMaxDepth : maxDepth;
+        indexHierarchy(rank);
+    }
+
+    // Rank of every symbol id the copies use among their sorted names, indexed by id
+    private int[] nameRanks(Collection<Component> copies) {
+        IntSet used = new IntSet();
+        for (Component copy : copies) {
+            used.addAll(copy.getComposedPartIds());
+            used.addAll(copy.getProvidedInterfaceIds());
+            used.addAll(copy.getRequiredInterfaceIds());
+            used.addAll(copy.getConcreteDependencyIds());
+            for (Map.Entry<Integer, IntSet> entry : copy.getClassImplementationIds().entrySet()) {
+                used.add(entry.getKey());
+                used.addAll(entry.getValue());
+            }
+        }
+        List<Integer> ids = new ArrayList<>(used.size());
+        used.forEach(ids::add);
+        ids.sort(Comparator.comparing(symbols::getName).thenComparingInt(id -> id));
+        int[] rank = new int[symbols.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            rank[ids.get(i)] = i;
+        }
+        return rank;
+    }
+
+    // Deepest components first, so every subtree is complete before it is added to its parent
+    private void indexHierarchy(int[] rank) {
+        List<Component> deepestFirst = new ArrayList<>(components);
+        deepestFirst.sort(Comparator.comparingInt(Component::getDepth).reversed());
+        for (Component component : deepestFirst) {
+            IntSet required = subtreeRequiredEdges.computeIfAbsent(component, c -> new IntSet());
+            required.addAll(requiredEdges.get(component));
+            IntSet implemented = subtreeImplementedInterfaces.computeIfAbsent(component, c -> new IntSet());
+            for (IntSet interfaces : component.getClassImplementationIds().values()) {
+                implemented.addAll(interfaces);
+            }
+            Component parent = findParent(component.getName());
+            if (parent != null) {
+                parents.put(component, parent);
+                subtreeRequiredEdges.computeIfAbsent(parent, c -> new IntSet()).addAll(required);
+                subtreeImplementedInterfaces.computeIfAbsent(parent, c -> new IntSet()).addAll(implemented);
+            }
+            required.freeze().sortBy(rank);
+            implemented.freeze().sortBy(rank);
+        }
+    }
+
+    private Component findParent(String packageName) {
+        for (String parentName = getParentPackage(packageName); parentName != null; parentName = getParentPackage(parentName)) {
+            Component parent = componentsByName.get(parentName);
+            if (parent != null) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    public static ModelSnapshot of(Collection<Component> components) {
+        return new ModelSnapshot(components, -1);
+    }
+
+    // Snapshot whose gray-box levels are computed against the given depth instead of the model's own
+    public static ModelSnapshot of(Collection<Component> components, int globalMaxDepth) {
+        return new ModelSnapshot(components, globalMaxDepth);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    // Frozen components in name order
+    public Set<Component> getComponents() {
+        return componentSet;
+    }
+
+    public List<Component> getComponentList() {
+        return components;
+    }
+
+    public Component getComponent(String name) {
+        return componentsByName.get(name);
+    }
+
+    // Components whose parent package is not part of the model, in name order
+    public List<Component> getRoots() {
+        return roots;
+    }
+
+    public int getGlobalMaxDepth() {
+        return globalMaxDepth;
+    }
+
+    public boolean isUsedInterface(int interfaceId) {
+        return usedInterfaces.contains(interfaceId);
+    }
+
+    // Returns null when no component of the model provides the interface
+    public Component getProvider(int interfaceId) {
+        return providersByInterface.get(interfaceId);
+    }
+
+    // Required interfaces of a component that are not implemented inside the component itself
+    public IntSet getRequiredEdges(Component component) {
+        return requiredEdges.get(component);
+    }
+
+    // Interfaces implemented by the classes of a component, without its sub-packages
+    public IntSet getImplementedInterfaces(Component component) {
+        return implementedInterfaces.get(component);
+    }
+
+    public PackageCycles getPackageCycles() {
+        PackageCycles cycles = packageCycles;
+        if (cycles == null) {
+            cycles = PackageCycles.analyze(this);
+            packageCycles = cycles;
+        }
+        return cycles;
+    }
+
+    // Nearest enclosing component of the model; null for roots
+    public Component getParent(Component component) {
+        return parents.get(component);
+    }
+
+    // The component that stands for the given one when everything deeper than rollUpDepth is
+    // collapsed: its ancestor at rollUpDepth, or the component itself when it is not deeper
+    public Component getRollUp(Component component, int rollUpDepth) {
+        Component representative = component;
+        Component parent = parents.get(representative);
+        while (parent != null && parent.getDepth() >= rollUpDepth) {
+            representative = parent;
+            parent = parents.get(representative);
+        }
+        return representative;
+    }
+
+    // Required edges of all components of the subtree of a component, its own included
+    public IntSet getSubtreeRequiredEdges(Component component) {
+        return subtreeRequiredEdges.get(component);
+    }
+
+    // Interfaces implemented by classes anywhere in the subtree of a component
+    public IntSet getSubtreeImplementedInterfaces(Component component) {
+        return subtreeImplementedInterfaces.get(component);
+    }
+
+    private static String getParentPackage(String packageName) {
+        if (packageName == null || packageName.isEmpty()) {
+            return null;
+        }
+        int lastDotIndex = packageName.lastIndexOf('.');
+        return lastDotIndex == -1 ? null : packageName.substring(0, lastDotIndex);
+    }
+}
@@ -0,0 +1,257 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Keeps a model in step with a build output: watches class directories (recursively) and JARs,
+// and after every burst of changes brings the parser up to date through
+// DependencyParser.updateClasspath, which re-reads only the changed class files and rebuilds
+// only the packages they affect. A compiler writing 500 class files causes one update: events
+// are collected until the file system has been quiet for watch.quiet ms (default 300), or for
+// at most watch.maxDelay ms (default 5000) while writes keep coming.
+//
+//   java main.DependencyParser --watch [--out <dir>] [--format png|svg|none] target/classes
+public class ModelWatcher implements Closeable {
+    private static final String USAGE = String.join("\n",
+            "Usage: DependencyParser --watch [options] <classes directory | jar>...",
+            "  --out <dir>          output directory (default: diagrams)",
+            "  --format <format>    png, svg or none to write only the .puml files (default: png)");
+
+    private static final long QUIET_MILLIS = Long.getLong("watch.quiet", 300L);
+    private static final long MAX_DELAY_MILLIS = Long.getLong("watch.maxDelay", 5000L);
+
+    public interface Listener {
+        // Called on the watching thread after the first analysis and after every update that
+        // changed the model; changedPackages is empty for the first call
+        void modelUpdated(ModelSnapshot snapshot, Set<String> changedPackages);
+    }
+
+    private final DependencyParser parser;
+    private final List<File> classpath;
+    private final Listener listener;
+    private final WatchService watchService;
+    // A directory of classes is watched with all its sub-directories, a JAR through its parent
+    private final Map<WatchKey, Path> classDirectories = new HashMap<>();
+    private final Map<WatchKey, Path> jarDirectories = new HashMap<>();
+    private final Set<Path> jars = new HashSet<>();
+    private volatile boolean closed;
+
+    public ModelWatcher(DependencyParser parser, List<File> classpath, Listener listener) throws IOException {
+        this.parser = parser;
+        this.classpath = List.copyOf(classpath);
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            for (File entry : this.classpath) {
+                Path path = entry.toPath().toAbsolutePath().normalize();
+                if (Files.isDirectory(path)) {
+                    registerTree(path);
+                } else {
+                    jars.add(path);
+                    jarDirectories.put(path.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path.getParent());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    // Analyzes once, then updates after every burst of changes until closed or interrupted
+    public void watch() {
+        update(true);
+        try {
+            while (!closed) {
+                boolean relevant = handle(watchService.take());
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS);
+                while (System.nanoTime() < deadline) {
+                    WatchKey key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    relevant |= handle(key);
+                }
+                if (relevant) {
+                    update(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed from another thread
+        }
+    }
+
+    private void update(boolean first) {
+        try {
+            Set<String> changedPackages = parser.updateClasspath(classpath);
+            if (first || !changedPackages.isEmpty()) {
+                listener.modelUpdated(parser.snapshot(), first ? Collections.emptySet() : changedPackages);
+            }
+        } catch (IOException e) {
+            // Typically a JAR caught while it is being written; its last write triggers another update
+            System.err.println("Update failed, waiting for the next change: " + e.getMessage());
+        }
+    }
+
+    // Whether the events of the key can change the model
+    private boolean handle(WatchKey key) {
+        boolean relevant = false;
+        Path classDirectory = classDirectories.get(key);
+        Path jarDirectory = jarDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were lost; updateClasspath compares everything anyway
+                relevant = true;
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (jarDirectory != null && jars.contains(jarDirectory.resolve(name))) {
+                relevant = true;
+            }
+            if (classDirectory != null) {
+                Path child = classDirectory.resolve(name);
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                    // A new package; its class files may be written before it is registered
+                    try {
+                        registerTree(child);
+                    } catch (IOException e) {
+                        System.err.println("Cannot watch " + child + ": " + e.getMessage());
+                    }
+                    relevant = true;
+                } else if (name.toString().endsWith(".class") || event.kind() == ENTRY_DELETE) {
+                    relevant = true;
+                }
+            }
+        }
+        if (!key.reset()) {
+            classDirectories.remove(key);
+            jarDirectories.remove(key);
+        }
+        return relevant;
+    }
+
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                classDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    // Watches until the process is stopped, rewriting every view as <out>/<view>.puml and
+    // re-rendering only the views whose text changed
+    public static int run(String[] args) {
+        Path outputDirectory = Paths.get("diagrams");
+        DiagramRenderer.OutputFormat format = DiagramRenderer.OutputFormat.PNG;
+        List<File> classpath = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ((arg.equals("--out") || arg.equals("--format")) && i + 1 >= args.length) {
+                System.err.println("Missing value for " + arg);
+                System.err.println(USAGE);
+                return BatchAnalyzer.EXIT_USAGE;
+            }
+            switch (arg) {
+                case "--out":
+                    outputDirectory = Paths.get(args[++i]);
+                    break;
+                case "--format":
+                    String formatName = args[++i];
+                    try {
+                        format = formatName.equals("none") ? null : DiagramRenderer.OutputFormat.valueOf(formatName.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Unknown format: " + formatName);
+                        System.err.println(USAGE);
+                        return BatchAnalyzer.EXIT_USAGE;
+                    }
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        System.err.println("Unknown option: " + arg);
+                        System.err.println(USAGE);
+                        return BatchAnalyzer.EXIT_USAGE;
+                    }
+                    classpath.add(new File(arg));
+            }
+        }
+        if (classpath.isEmpty()) {
+            System.err.println("Nothing to watch");
+            System.err.println(USAGE);
+            return BatchAnalyzer.EXIT_USAGE;
+        }
+
+        try {
+            Files.createDirectories(outputDirectory);
+            DiagramRenderer renderer = format == null ? null : new RenderCache(
+                    DiagramRendererFactory.createRenderer(DiagramRendererFactory.RendererType.EMBEDDED),
+                    RenderCache.defaultDirectory(), 64L * 1024 * 1024, 512L * 1024 * 1024);
+            DependencyParser parser = new DependencyParser();
+            parser.setParallelism(Integer.getInteger("analysis.threads", Runtime.getRuntime().availableProcessors()));
+            ViewWriter writer = new ViewWriter(outputDirectory, renderer, format);
+            try (ModelWatcher watcher = new ModelWatcher(parser, classpath, writer)) {
+                System.out.println("Watching " + classpath + ", diagrams in " + outputDirectory.toAbsolutePath());
+                watcher.watch();
+            }
+            return BatchAnalyzer.EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("Cannot watch: " + e.getMessage());
+            return BatchAnalyzer.EXIT_FAILURES;
+        }
+    }
+
+    // Listener of the command line mode
+    private static class ViewWriter implements Listener {
+        private final Path outputDirectory;
+        private final DiagramRenderer renderer;
+        private final DiagramRenderer.OutputFormat format;
+        private final UMLGenerator generator = UMLGeneratorFactory.createGenerator(UMLGeneratorFactory.GeneratorType.PLANT_UML);
+        private final Map<UMLGenerator.View, String> written = new HashMap<>();
+
+        ViewWriter(Path outputDirectory, DiagramRenderer renderer, DiagramRenderer.OutputFormat format) {
+            this.outputDirectory = outputDirectory;
+            this.renderer = renderer;
+            this.format = format;
+        }
+
+        @Override
+        public void modelUpdated(ModelSnapshot snapshot, Set<String> changedPackages) {
+            if (!changedPackages.isEmpty()) {
+                System.out.println("Changed: " + String.join(", ", changedPackages));
+            }
+            Map<UMLGenerator.View, String> views = generator.generateViews(snapshot, UMLGenerator.View.allViews(snapshot.getGlobalMaxDepth()));
+            int rendered = 0;
+            for (Map.Entry<UMLGenerator.View, String> view : views.entrySet()) {
+                if (view.getValue().equals(written.get(view.getKey()))) {
+                    continue;
+                }
+                try {
+                    Files.writeString(outputDirectory.resolve(view.getKey() + ".puml"), view.getValue(), StandardCharsets.UTF_8);
+                    if (renderer != null) {
+                        Files.write(outputDirectory.resolve(view.getKey() + "." + format.getExtension()),
+                                renderer.render(view.getValue(), format));
+                    }
+                    written.put(view.getKey(), view.getValue());
+                    rendered++;
+                } catch (IOException e) {
+                    System.err.println("Cannot write " + view.getKey() + ": " + e.getMessage());
+                }
+            }
+            System.out.println(rendered + " of " + views.size() + " views changed");
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package main;
+
+import java.util.*;
+
+// Finds cycles between the packages of a model. A component depends on another when it requires
+// an interface the other provides or depends on a concrete class of the other. The graph is
+// kept as compressed adjacency arrays (the targets of component i are
+// targets[offsets[i]] .. targets[offsets[i + 1] - 1]), and Tarjan's algorithm runs on explicit
+// stacks, so time and memory are linear in the size of the graph and deep dependency chains
+// cannot overflow the call stack. Every strongly connected component of more than one package
+// is reported as a Cycle together with the edges inside it and what causes them.
+public final class PackageCycles {
+
+    // A dependency between two packages of a cycle
+    public static final class Edge {
+        private final String from;
+        private final String to;
+        private final SortedSet<String> interfaces;
+        private final SortedSet<String> concreteClasses;
+
+        private Edge(String from, String to, SortedSet<String> interfaces, SortedSet<String> concreteClasses) {
+            this.from = from;
+            this.to = to;
+            this.interfaces = Collections.unmodifiableSortedSet(interfaces);
+            this.concreteClasses = Collections.unmodifiableSortedSet(concreteClasses);
+        }
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        // Interfaces of the target required by the source
+        public SortedSet<String> getInterfaces() {
+            return interfaces;
+        }
+
+        // Concrete classes of the target the source depends on
+        public SortedSet<String> getConcreteClasses() {
+            return concreteClasses;
+        }
+
+        @Override
+        public String toString() {
+            List<String> causes = new ArrayList<>(interfaces);
+            causes.addAll(concreteClasses);
+            return from + " -> " + to + " " + causes;
+        }
+    }
+
+    // The packages of one strongly connected component, in name order, and its edges
+    public static final class Cycle {
+        private final List<String> packages;
+        private final List<Edge> edges;
+
+        private Cycle(List<String> packages, List<Edge> edges) {
+            this.packages = List.copyOf(packages);
+            this.edges = List.copyOf(edges);
+        }
+
+        public List<String> getPackages() {
+            return packages;
+        }
+
+        public List<Edge> getEdges() {
+            return edges;
+        }
+    }
+
+    private final List<Cycle> cycles;
+    private final Set<String> cyclicPackages;
+
+    private PackageCycles(List<Cycle> cycles) {
+        this.cycles = List.copyOf(cycles);
+        Set<String> packages = new HashSet<>();
+        for (Cycle cycle : cycles) {
+            packages.addAll(cycle.getPackages());
+        }
+        this.cyclicPackages = Collections.unmodifiableSet(packages);
+    }
+
+    public static PackageCycles analyze(ModelSnapshot snapshot) {
+        List<Component> components = snapshot.getComponentList();
+        Map<Component, Integer> indexes = new IdentityHashMap<>(components.size() * 2);
+        for (int i = 0; i < components.size(); i++) {
+            indexes.put(components.get(i), i);
+        }
+
+        // Edges as from << 32 | to, sorted and without duplicates or self-loops
+        long[] edges = new long[64];
+        int edgeCount = 0;
+        for (int from = 0; from < components.size(); from++) {
+            Component component = components.get(from);
+            for (int target : targets(snapshot, component, indexes)) {
+                if (target != from) {
+                    if (edgeCount == edges.length) {
+                        edges = Arrays.copyOf(edges, edgeCount * 2);
+                    }
+                    edges[edgeCount++] = (long) from << 32 | target;
+                }
+            }
+        }
+        Arrays.sort(edges, 0, edgeCount);
+        int[] offsets = new int[components.size() + 1];
+        int[] targets = new int[edgeCount];
+        int unique = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            if (i > 0 && edges[i] == edges[i - 1]) {
+                continue;
+            }
+            offsets[(int) (edges[i] >>> 32) + 1]++;
+            targets[unique++] = (int) edges[i];
+        }
+        for (int i = 0; i < components.size(); i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        List<Cycle> cycles = new ArrayList<>();
+        for (int[] scc : stronglyConnected(components.size(), offsets, targets)) {
+            if (scc.length > 1) {
+                cycles.add(describe(snapshot, scc, components, indexes));
+            }
+        }
+        // Biggest first, then by first package
+        cycles.sort(Comparator.comparingInt((Cycle cycle) -> -cycle.getPackages().size())
+                .thenComparing(cycle -> cycle.getPackages().get(0)));
+        return new PackageCycles(cycles);
+    }
+
+    public List<Cycle> getCycles() {
+        return cycles;
+    }
+
+    public boolean isEmpty() {
+        return cycles.isEmpty();
+    }
+
+    public boolean isInCycle(String packageName) {
+        return cyclicPackages.contains(packageName);
+    }
+
+    // One line per cycle followed by one indented line per edge
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Cycle cycle : cycles) {
+            lines.add("Cycle of " + cycle.getPackages().size() + " packages: " + cycle.getPackages());
+            for (Edge edge : cycle.getEdges()) {
+                lines.add("  " + edge);
+            }
+        }
+        return lines;
+    }
+
+    // Indexes of the components a component depends on, possibly repeated
+    private static List<Integer> targets(ModelSnapshot snapshot, Component component, Map<Component, Integer> indexes) {
+        List<Integer> targets = new ArrayList<>();
+        for (int interfaceId : snapshot.getRequiredEdges(component).toArray()) {
+            Component provider = snapshot.getProvider(interfaceId);
+            if (provider != null) {
+                targets.add(indexes.get(provider));
+            }
+        }
+        SymbolTable symbols = snapshot.getSymbols();
+        for (int classId : component.getConcreteDependencyIds().toArray()) {
+            Component owner = snapshot.getComponent(symbols.getPackageName(classId));
+            if (owner != null) {
+                targets.add(indexes.get(owner));
+            }
+        }
+        return targets;
+    }
+
+    // Tarjan's algorithm with the recursion replaced by a stack of (node, next edge) frames
+    private static List<int[]> stronglyConnected(int nodeCount, int[] offsets, int[] targets) {
+        int[] index = new int[nodeCount];
+        int[] lowLink = new int[nodeCount];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[nodeCount];
+        int[] sccStack = new int[nodeCount];
+        int sccTop = 0;
+        int[] callNodes = new int[nodeCount];
+        int[] callEdges = new int[nodeCount];
+        int nextIndex = 0;
+        List<int[]> result = new ArrayList<>();
+
+        for (int start = 0; start < nodeCount; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callNodes[0] = start;
+            callEdges[0] = offsets[start];
+            index[start] = lowLink[start] = nextIndex++;
+            sccStack[sccTop++] = start;
+            onStack[start] = true;
+            while (depth >= 0) {
+                int node = callNodes[depth];
+                if (callEdges[depth] < offsets[node + 1]) {
+                    int target = targets[callEdges[depth]++];
+                    if (index[target] == -1) {
+                        // "Recursive call" on the target
+                        depth++;
+                        callNodes[depth] = target;
+                        callEdges[depth] = offsets[target];
+                        index[target] = lowLink[target] = nextIndex++;
+                        sccStack[sccTop++] = target;
+                        onStack[target] = true;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], index[target]);
+                    }
+                    continue;
+                }
+                // All edges of node done: pop its component if it is the root of one
+                if (lowLink[node] == index[node]) {
+                    int size = 0;
+                    while (sccStack[sccTop - 1 - size] != node) {
+                        size++;
+                    }
+                    size++;
+                    int[] scc = Arrays.copyOfRange(sccStack, sccTop - size, sccTop);
+                    sccTop -= size;
+                    for (int member : scc) {
+                        onStack[member] = false;
+                    }
+                    result.add(scc);
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callNodes[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Cycle describe(ModelSnapshot snapshot, int[] scc, List<Component> components, Map<Component, Integer> indexes) {
+        SymbolTable symbols = snapshot.getSymbols();
+        Set<Integer> members = new HashSet<>();
+        List<String> packages = new ArrayList<>();
+        for (int member : scc) {
+            members.add(member);
+            packages.add(components.get(member).getName());
+        }
+        Collections.sort(packages);
+
+        // Causes of the edges between members, by target in name order
+        List<Edge> edges = new ArrayList<>();
+        for (String packageName : packages) {
+            Component component = snapshot.getComponent(packageName);
+            Map<String, SortedSet<String>> interfaces = new TreeMap<>();
+            Map<String, SortedSet<String>> concreteClasses = new TreeMap<>();
+            for (int interfaceId : snapshot.getRequiredEdges(component).toArray()) {
+                Component provider = snapshot.getProvider(interfaceId);
+                if (provider != null && provider != component && members.contains(indexes.get(provider))) {
+                    interfaces.computeIfAbsent(provider.getName(), name -> new TreeSet<>()).add(symbols.getName(interfaceId));
+                }
+            }
+            for (int classId : component.getConcreteDependencyIds().toArray()) {
+                Component owner = snapshot.getComponent(symbols.getPackageName(classId));
+                if (owner != null && owner != component && members.contains(indexes.get(owner))) {
+                    concreteClasses.computeIfAbsent(owner.getName(), name -> new TreeSet<>()).add(symbols.getName(classId));
+                }
+            }
+            Set<String> targetNames = new TreeSet<>(interfaces.keySet());
+            targetNames.addAll(concreteClasses.keySet());
+            for (String target : targetNames) {
+                edges.add(new Edge(packageName, target,
+                        interfaces.getOrDefault(target, new TreeSet<>()),
+                        concreteClasses.getOrDefault(target, new TreeSet<>())));
+            }
+        }
+        return new Cycle(packages, edges);
+    }
+}
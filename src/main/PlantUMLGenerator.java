@@ -1,150 +1,353 @@
 package main;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
+import java.util.function.Function;
 
 public class PlantUMLGenerator implements UMLGenerator {
+    private static final String CYCLE_COLOR = "#FFC0C0";
 
-    private Set<String> allUsedInterfaces = new HashSet<>();
+    // Draws the packages of dependency cycles in red, see PackageCycles
+    private final boolean highlightCycles;
 
+    // Holds no state besides its settings: everything derived from the whole model lives in the
+    // ModelSnapshot, so one generator can serve concurrent calls and never modifies the components.
+    // -Duml.highlightCycles=true turns the highlighting on for the default generator.
     public PlantUMLGenerator() {
+        this(Boolean.getBoolean("uml.highlightCycles"));
     }
 
-    // Collect all interfaces that are used by implementations and required interfaces.
-    private void computeAllUsedInterfaces(Set<Component> components) {
-        allUsedInterfaces.clear();
-        for (Component component : components) {
-            for (Set<String> impls : component.getClassImplementations().values()) {
-                allUsedInterfaces.addAll(impls);
-            }
-            allUsedInterfaces.addAll(component.getRequiredInterfaces());
-        }
+    public PlantUMLGenerator(boolean highlightCycles) {
+        this.highlightCycles = highlightCycles;
     }
 
     @Override
-    public String generateUML(Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth) {
-        computeAllUsedInterfaces(components);
+    public String generateUML(ModelSnapshot snapshot, View view) {
         StringBuilder umlBuilder = new StringBuilder();
-        umlBuilder.append("@startuml\n");
+        try {
+            appendUML(snapshot, List.of(view), List.of(umlBuilder), null, null);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return umlBuilder.toString();
+    }
+
+    @Override
+    public void writeUML(ModelSnapshot snapshot, View view, Writer out) throws IOException {
+        appendUML(snapshot, List.of(view), List.of(out), null, null);
+        out.flush();
+    }
+
+    // All views share one walk over the snapshot; every emitted line goes to the builders of
+    // the views that show it.
+    @Override
+    public Map<View, String> generateViews(ModelSnapshot snapshot, List<View> views) {
+        return generateViews(snapshot, views, null, null);
+    }
+
+    @Override
+    public Map<View, String> generatePartitionViews(DiagramPartitioning partitioning, DiagramPartitioning.Partition partition, List<View> views) {
+        return generateViews(partitioning.getSnapshot(), views, partitioning, partition);
+    }
+
+    // One component per partition, labeled with its size and linked to its diagrams, and one
+    // edge per pair of partitions labeled with the number of required interfaces between them
+    @Override
+    public String generateOverview(DiagramPartitioning partitioning, Function<DiagramPartitioning.Partition, String> link) {
+        ModelSnapshot snapshot = partitioning.getSnapshot();
+        List<DiagramPartitioning.Partition> partitions = partitioning.getPartitions();
+        Map<DiagramPartitioning.Partition, Integer> indexes = new IdentityHashMap<>();
+        StringBuilder umlBuilder = new StringBuilder("@startuml\n");
+        for (int i = 0; i < partitions.size(); i++) {
+            DiagramPartitioning.Partition partition = partitions.get(i);
+            indexes.put(partition, i);
+            umlBuilder.append("component \"").append(partition.getName()).append("\\n")
+                    .append(partition.getComponents().size()).append(" components\" as p").append(i)
+                    .append(" [[").append(link.apply(partition)).append("]]\n");
+        }
+        // From index * partitions + to index -> edges, in the order first seen
+        Map<Long, Integer> edgeCounts = new LinkedHashMap<>();
+        for (Component component : snapshot.getComponentList()) {
+            int from = indexes.get(partitioning.getPartition(component));
+            for (int requiredId : snapshot.getRequiredEdges(component).toArray()) {
+                Component target = snapshot.getProvider(requiredId);
+                if (target != null) {
+                    int to = indexes.get(partitioning.getPartition(target));
+                    if (from != to) {
+                        edgeCounts.merge((long) from * partitions.size() + to, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Long, Integer> edge : edgeCounts.entrySet()) {
+            umlBuilder.append("p").append(edge.getKey() / partitions.size())
+                    .append(" --> p").append(edge.getKey() % partitions.size())
+                    .append(" : ").append(edge.getValue()).append("\n");
+        }
+        return umlBuilder.append("@enduml\n").toString();
+    }
+
+    private Map<View, String> generateViews(ModelSnapshot snapshot, List<View> views,
+                                            DiagramPartitioning partitioning, DiagramPartitioning.Partition partition) {
+        List<StringBuilder> builders = new ArrayList<>(views.size());
+        for (int i = 0; i < views.size(); i++) {
+            builders.add(new StringBuilder());
+        }
+        try {
+            appendUML(snapshot, views, builders, partitioning, partition);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<View, String> umlTexts = new LinkedHashMap<>();
+        for (int i = 0; i < views.size(); i++) {
+            umlTexts.put(views.get(i), builders.get(i).toString());
+        }
+        return umlTexts;
+    }
+
+    // Emits the diagrams line by line into the sinks (one per view), which are either in-memory
+    // builders or caller supplied Writers, so the text never has to exist as a whole.
+    // With a partition only its components are drawn; their edges to other partitions end at
+    // one stub interface per required interface, stereotyped with the providing partition.
+    private void appendUML(ModelSnapshot snapshot, List<View> views, List<? extends Appendable> sinks,
+                           DiagramPartitioning partitioning, DiagramPartitioning.Partition partition) throws IOException {
+        List<Component> components = partition == null ? snapshot.getComponentList() : partition.getComponents();
+        appendToAll(sinks, "@startuml\n");
 
         // Generate package structure
         Set<String> processedPackages = new HashSet<>();
-        // process root packages
-        for (Component component : components) {
-            if (isRootPackage(component, components)) {
-                generateComponentUML(component, umlBuilder, processedPackages, components, mode, grayBoxLevel, globalMaxDepth, true);
+        // process root packages; a partition's roots may be collapsed into another partition
+        for (Component component : partition == null ? snapshot.getRoots() : partition.getRoots()) {
+            List<View> rootViews = new ArrayList<>(views.size());
+            List<Appendable> rootSinks = new ArrayList<>(sinks.size());
+            for (int i = 0; i < views.size(); i++) {
+                if (snapshot.getRollUp(component, rollUpDepth(views.get(i), snapshot.getGlobalMaxDepth())) == component) {
+                    rootViews.add(views.get(i));
+                    rootSinks.add(sinks.get(i));
+                }
+            }
+            if (!rootViews.isEmpty()) {
+                generateComponentUML(snapshot, component, rootViews, rootSinks, processedPackages, partition);
+            }
+        }
+
+        // Gray-box views are rolled up and get their relationships of their own
+        List<View> plainViews = new ArrayList<>();
+        List<Appendable> plainSinks = new ArrayList<>();
+        for (int i = 0; i < views.size(); i++) {
+            if (views.get(i).getMode() == VisualizationMode.GRAY_BOX) {
+                appendRolledUpRelationships(snapshot, views.get(i), sinks.get(i), components, partitioning, partition);
+            } else {
+                plainViews.add(views.get(i));
+                plainSinks.add(sinks.get(i));
             }
         }
+        if (!plainViews.isEmpty()) {
+            appendRelationships(snapshot, plainViews, plainSinks, components, partitioning, partition);
+        }
+
+        appendToAll(sinks, "@enduml\n");
+    }
+
+    private void appendRelationships(ModelSnapshot snapshot, List<View> views, List<? extends Appendable> sinks, List<Component> components,
+                                     DiagramPartitioning partitioning, DiagramPartitioning.Partition partition) throws IOException {
+        SymbolTable symbols = snapshot.getSymbols();
 
         // Add implementation relationships ( -0)- )
-        boolean isWhiteBoxMode = (mode == VisualizationMode.WHITE_BOX);
         for (Component component : components) {
-            for (Map.Entry<String, Set<String>> entry : component.getClassImplementations().entrySet()) {
-                String className = entry.getKey();
-                for (String interfaceName : entry.getValue()) {
-                    String simpleInterfaceName = interfaceName.substring(interfaceName.lastIndexOf('.') + 1);
-                    String packageName = interfaceName.contains(".")
-                            ? interfaceName.substring(0, interfaceName.lastIndexOf('.'))
+            for (Map.Entry<Integer, IntSet> entry : component.getClassImplementationIds().entrySet()) {
+                String className = symbols.getName(entry.getKey());
+                for (int interfaceId : entry.getValue().toArray()) {
+                    String simpleInterfaceName = symbols.getSimpleName(interfaceId);
+                    String packageName = symbols.getPackageId(interfaceId) != -1
+                            ? symbols.getPackageName(interfaceId)
                             : "default";
 
-                    if (isWhiteBoxMode) {
-                        umlBuilder.append(className)
-                                .append(" -0)- ")
-                                .append(packageName)
-                                .append(" : \"")
-                                .append(simpleInterfaceName)
-                                .append("\"\n");
-                    } else {
-                        umlBuilder.append(component.getName())
-                                .append(" -() ")
-                                .append(simpleInterfaceName)
-                                .append("\n");
+                    String whiteBoxLine = className + " -0)- " + packageName + " : \"" + simpleInterfaceName + "\"\n";
+                    String componentLine = component.getName() + " -() " + simpleInterfaceName + "\n";
+                    for (int i = 0; i < views.size(); i++) {
+                        sinks.get(i).append(views.get(i).getMode() == VisualizationMode.WHITE_BOX ? whiteBoxLine : componentLine);
                     }
-                    // Remove this interface from requiredInterfaces to avoid duplicates.
-                    component.getRequiredInterfaces().remove(interfaceName);
                 }
             }
         }
 
-        // Add relationships between components ( -(0- )
+        // Add relationships between components ( -(0- ), leaving out interfaces the component
+        // implements itself
+        IntSet stubs = new IntSet();
         for (Component component : components) {
             String fromPackageName = component.getName().isEmpty() ? "default" : component.getName();
-            for (String requiredInterface : component.getRequiredInterfaces()) {
-                for (Component target : components) {
-                    if (target.getProvidedInterfaces().contains(requiredInterface)) {
-                        String toPackageName = target.getName().isEmpty() ? "default" : target.getName();
-                        String simpleInterfaceName = requiredInterface.substring(requiredInterface.lastIndexOf('.') + 1);
-                        umlBuilder.append(fromPackageName)
-                                .append(" -(0- ")
-                                .append(toPackageName)
-                                .append(" : \"")
-                                .append(simpleInterfaceName)
-                                .append("\"\n");
-                        break;
+            for (int requiredId : snapshot.getRequiredEdges(component).toArray()) {
+                Component target = snapshot.getProvider(requiredId);
+                if (target == null) {
+                    continue;
+                }
+                String simpleInterfaceName = symbols.getSimpleName(requiredId);
+                if (partition == null || partition.contains(target)) {
+                    String toPackageName = target.getName().isEmpty() ? "default" : target.getName();
+                    appendToAll(sinks, fromPackageName + " -(0- " + toPackageName + " : \"" + simpleInterfaceName + "\"\n");
+                } else {
+                    String stub = "stub_" + requiredId;
+                    if (stubs.add(requiredId)) {
+                        appendToAll(sinks, "interface \"" + simpleInterfaceName + "\" as " + stub
+                                + " <<" + partitioning.getPartition(target).getName() + ">>\n");
                     }
+                    appendToAll(sinks, fromPackageName + " ..> " + stub + "\n");
                 }
             }
         }
+    }
 
-        umlBuilder.append("@enduml\n");
-        return umlBuilder.toString();
+    // Gray-box relationships: every component deeper than the roll-up depth is collapsed into its
+    // ancestor at that depth, which takes over the interfaces and edges of its whole subtree from
+    // the snapshot's hierarchy index. Edges between the same two components merge into one,
+    // labeled with the interface or, for several, their number.
+    private void appendRolledUpRelationships(ModelSnapshot snapshot, View view, Appendable sink, List<Component> components,
+                                             DiagramPartitioning partitioning, DiagramPartitioning.Partition partition) throws IOException {
+        SymbolTable symbols = snapshot.getSymbols();
+        int rollUpDepth = rollUpDepth(view, snapshot.getGlobalMaxDepth());
+        List<Component> shown = new ArrayList<>();
+        for (Component component : components) {
+            if (snapshot.getRollUp(component, rollUpDepth) == component) {
+                shown.add(component);
+            }
+        }
+
+        // Provided interfaces ( -() ), once per component and interface
+        for (Component component : shown) {
+            IntSet implemented = component.getDepth() >= rollUpDepth
+                    ? snapshot.getSubtreeImplementedInterfaces(component)
+                    : snapshot.getImplementedInterfaces(component);
+            for (int interfaceId : implemented.toArray()) {
+                sink.append(component.getName()).append(" -() ").append(symbols.getSimpleName(interfaceId)).append("\n");
+            }
+        }
+
+        // Required interfaces ( -(0- ), grouped by the component that stands for the provider
+        Set<String> stubs = new HashSet<>();
+        for (Component component : shown) {
+            IntSet required = component.getDepth() >= rollUpDepth
+                    ? snapshot.getSubtreeRequiredEdges(component)
+                    : snapshot.getRequiredEdges(component);
+            Map<Component, List<Integer>> edges = new LinkedHashMap<>();
+            for (int requiredId : required.toArray()) {
+                Component target = snapshot.getProvider(requiredId);
+                if (target == null) {
+                    continue;
+                }
+                Component to = snapshot.getRollUp(target, rollUpDepth);
+                if (to != component) {
+                    edges.computeIfAbsent(to, c -> new ArrayList<>()).add(requiredId);
+                }
+            }
+            String fromPackageName = component.getName().isEmpty() ? "default" : component.getName();
+            for (Map.Entry<Component, List<Integer>> edge : edges.entrySet()) {
+                Component to = edge.getKey();
+                String toPackageName = to.getName().isEmpty() ? "default" : to.getName();
+                String label = edge.getValue().size() == 1
+                        ? symbols.getSimpleName(edge.getValue().get(0))
+                        : edge.getValue().size() + " interfaces";
+                if (partition == null || partition.contains(to)) {
+                    sink.append(fromPackageName).append(" -(0- ").append(toPackageName).append(" : \"").append(label).append("\"\n");
+                } else {
+                    String stub = "stub_" + toPackageName.replace('.', '_');
+                    if (stubs.add(stub)) {
+                        sink.append("interface \"").append(toPackageName).append("\" as ").append(stub)
+                                .append(" <<").append(partitioning.getPartition(to).getName()).append(">>\n");
+                    }
+                    sink.append(fromPackageName).append(" ..> ").append(stub).append(" : \"").append(label).append("\"\n");
+                }
+            }
+        }
+    }
+
+    private static void appendToAll(List<? extends Appendable> sinks, String text) throws IOException {
+        for (Appendable sink : sinks) {
+            sink.append(text);
+        }
+    }
+
+    // Components below this depth are collapsed into their ancestor at this depth: in GRAY_BOX
+    // mode the first level without details, in the other modes none
+    private static int rollUpDepth(View view, int globalMaxDepth) {
+        return view.getMode() == VisualizationMode.GRAY_BOX ? globalMaxDepth - view.getGrayBoxLevel() + 1 : Integer.MAX_VALUE;
+    }
+
+    // In WHITE_BOX mode every component shows its classes and interfaces, in BLACK_BOX none does,
+    // and in GRAY_BOX only components down to globalMaxDepth - grayBoxLevel do.
+    private static boolean showsDetails(View view, int depth, int globalMaxDepth) {
+        switch (view.getMode()) {
+            case WHITE_BOX:
+                return true;
+            case GRAY_BOX:
+                return depth <= globalMaxDepth - view.getGrayBoxLevel();
+            default:
+                return false;
+        }
     }
 
     // Recursive method to generate package contents.
     // In WHITE_BOX mode, it shows classes (if not provided interfaces) and interfaces (if not used).
     // In GRAY_BOX mode, if details are not hidden, we mimic the same behavior.
-    private void generateComponentUML(Component component, StringBuilder umlBuilder, Set<String> processedPackages,Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth, boolean isRootCall) {
+    private void generateComponentUML(ModelSnapshot snapshot, Component component, List<View> views, List<? extends Appendable> sinks,
+                                      Set<String> processedPackages, DiagramPartitioning.Partition partition) throws IOException {
         String packageName = component.getName().isEmpty() ? "default" : component.getName();
 
         // Skip already processed packages
         if (processedPackages.contains(packageName)) return;
         processedPackages.add(packageName);
 
-        // Only root calls should check for parent existence
-        if (isRootCall && !isRootPackage(component, components)) return;
+        boolean inCycle = highlightCycles && snapshot.getPackageCycles().isInCycle(component.getName());
+        appendToAll(sinks, "component " + packageName + (inCycle ? " <<cycle>> " + CYCLE_COLOR : "") + " {\n");
 
-        boolean hideDetails = (mode == VisualizationMode.GRAY_BOX && component.getDepth() > (globalMaxDepth - grayBoxLevel));
-
-        umlBuilder.append("component ").append(packageName).append(" {\n");
-
-        if (!hideDetails && mode != VisualizationMode.BLACK_BOX) {
-            for (String className : component.getComposedParts()) {
-                if (!component.getProvidedInterfaces().contains(className)) {
-                    umlBuilder.append("  class ").append(className).append("\n");
-                }
-            }
-            for (String iface : component.getProvidedInterfaces()) {
-                if (!allUsedInterfaces.contains(iface)) {
-                    umlBuilder.append("  interface ").append(iface).append("\n");
+        String details = null;
+        for (int i = 0; i < views.size(); i++) {
+            if (showsDetails(views.get(i), component.getDepth(), snapshot.getGlobalMaxDepth())) {
+                if (details == null) {
+                    details = componentDetails(snapshot, component);
                 }
+                sinks.get(i).append(details);
             }
         }
 
-        // Recursively process sub-packages
-        for (Component subPackage : component.getSubPackages().values()) {
-            generateComponentUML(subPackage, umlBuilder, processedPackages, components, mode, grayBoxLevel, globalMaxDepth, false);
+        // Recursively process sub-packages, for the views that do not collapse them
+        List<View> subViews = new ArrayList<>(views.size());
+        List<Appendable> subSinks = new ArrayList<>(sinks.size());
+        for (int i = 0; i < views.size(); i++) {
+            if (component.getDepth() < rollUpDepth(views.get(i), snapshot.getGlobalMaxDepth())) {
+                subViews.add(views.get(i));
+                subSinks.add(sinks.get(i));
+            }
+        }
+        if (!subViews.isEmpty()) {
+            for (Component subPackage : component.getSubPackages().values()) {
+                if (partition == null || partition.contains(subPackage)) {
+                    generateComponentUML(snapshot, subPackage, subViews, subSinks, processedPackages, partition);
+                }
+            }
         }
 
-        umlBuilder.append("}\n");
-    }
-
-
-    private boolean isRootPackage(Component component, Set<Component> components) {
-        String parentName = getParentPackage(component.getName());
-        return parentName == null || !componentExists(parentName, components);
-    }
-
-    private boolean componentExists(String packageName, Set<Component> components) {
-        return components.stream().anyMatch(c -> c.getName().equals(packageName));
+        appendToAll(sinks, "}\n");
     }
 
-    private String getParentPackage(String packageName) {
-        if (packageName == null || packageName.isEmpty()) {
-            return null;
+    // Classes that are not provided interfaces, and provided interfaces nobody uses
+    private static String componentDetails(ModelSnapshot snapshot, Component component) {
+        StringBuilder details = new StringBuilder();
+        SymbolTable symbols = snapshot.getSymbols();
+        IntSet providedIds = component.getProvidedInterfaceIds();
+        for (int classId : component.getComposedPartIds().toArray()) {
+            if (!providedIds.contains(classId)) {
+                details.append("  class ").append(symbols.getName(classId)).append("\n");
+            }
         }
-        int lastDotIndex = packageName.lastIndexOf('.');
-        if (lastDotIndex == -1) {
-            return null;
+        for (int ifaceId : providedIds.toArray()) {
+            if (!snapshot.isUsedInterface(ifaceId)) {
+                details.append("  interface ").append(symbols.getName(ifaceId)).append("\n");
+            }
         }
-        return packageName.substring(0, lastDotIndex);
+        return details.toString();
     }
 }
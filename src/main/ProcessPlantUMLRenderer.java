@@ -0,0 +1,85 @@
+package main;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Renders by starting "java -jar plantuml.jar -pipe" for each diagram. The source goes in through
+// stdin and the image comes back on stdout, so no file is written, but every call pays for a cold JVM.
+public class ProcessPlantUMLRenderer implements DiagramRenderer {
+    private final File plantUmlJar;
+
+    public ProcessPlantUMLRenderer(File plantUmlJar) {
+        this.plantUmlJar = plantUmlJar;
+    }
+
+    @Override
+    public byte[] render(String umlText, OutputFormat format) throws IOException {
+        Process process = start(format);
+        // Feed stdin from another thread so a large image on stdout cannot block the writer
+        CompletableFuture<Void> input = CompletableFuture.runAsync(() -> {
+            try (Writer writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(umlText);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        byte[] image;
+        try (InputStream out = process.getInputStream()) {
+            image = out.readAllBytes();
+        }
+        finish(process, input);
+        return image;
+    }
+
+    // The source is copied from the file into stdin and the image from stdout into imageFile
+    @Override
+    public void renderFile(Path umlFile, Path imageFile, OutputFormat format) throws IOException {
+        Process process = start(format);
+        CompletableFuture<Void> input = CompletableFuture.runAsync(() -> {
+            try (OutputStream in = process.getOutputStream()) {
+                Files.copy(umlFile, in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        try (InputStream out = process.getInputStream()) {
+            Files.copy(out, imageFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finish(process, input);
+    }
+
+    private Process start(OutputFormat format) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(
+                "java", "-jar", plantUmlJar.getAbsolutePath(),
+                "-pipe", "-charset", "UTF-8", "-t" + format.getExtension()
+        );
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return pb.start();
+    }
+
+    private static void finish(Process process, CompletableFuture<Void> input) throws IOException {
+        try {
+            input.join();
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("PlantUML failed with exit code " + exitCode);
+            }
+        } catch (CompletionException e) {
+            process.destroy();
+            throw e.getCause() instanceof UncheckedIOException
+                    ? ((UncheckedIOException) e.getCause()).getCause()
+                    : new IOException("Writing the diagram source failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new InterruptedIOException("Diagram generation interrupted");
+        }
+    }
+}
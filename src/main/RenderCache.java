@@ -0,0 +1,207 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Renderer decorator that remembers rendered diagrams, keyed by a SHA-256 of the output format
+// and the UML text. Recently used images are kept in memory and every image is kept on disk
+// under <hash>.<extension>; both tiers are bounded in bytes and evict the least recently used
+// entry first. A hit in either tier returns the image without calling the renderer.
+public class RenderCache implements DiagramRenderer {
+    private final DiagramRenderer renderer;
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+
+    // Both maps iterate from least to most recently used
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    public RenderCache(DiagramRenderer renderer, Path directory, long maxMemoryBytes, long maxDiskBytes) throws IOException {
+        this.renderer = renderer;
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        Files.createDirectories(directory);
+        loadDiskIndex();
+    }
+
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".component-diagram-cache", "diagrams");
+    }
+
+    @Override
+    public byte[] render(String umlText, OutputFormat format) throws IOException {
+        String key = key(umlText, format);
+        byte[] image = fromMemory(key);
+        if (image != null) {
+            return image;
+        }
+        Path file = fromDisk(key, format);
+        if (file != null) {
+            image = Files.readAllBytes(file);
+            toMemory(key, image);
+            return image;
+        }
+        image = renderer.render(umlText, format);
+        toMemory(key, image);
+        toDisk(key, format, image);
+        return image;
+    }
+
+    // Same as render, for a source that was streamed into umlFile: the key is hashed from the
+    // file, which has the same bytes as the text, and on a miss the renderer reads the file.
+    // Returns the image rather than the cached file, which a later insertion may evict.
+    public byte[] render(Path umlFile, OutputFormat format) throws IOException {
+        String key = key(umlFile, format);
+        byte[] image = fromMemory(key);
+        if (image != null) {
+            return image;
+        }
+        Path file = fromDisk(key, format);
+        if (file != null) {
+            try {
+                image = Files.readAllBytes(file);
+                toMemory(key, image);
+                return image;
+            } catch (NoSuchFileException e) {
+                // Evicted by another thread since, render it again
+            }
+        }
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            renderer.renderFile(umlFile, temp, format);
+            image = Files.readAllBytes(temp);
+            toMemory(key, image);
+            toDisk(key, format, temp);
+            return image;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public void renderFile(Path umlFile, Path imageFile, OutputFormat format) throws IOException {
+        Files.write(imageFile, render(umlFile, format));
+    }
+
+    private synchronized byte[] fromMemory(String key) {
+        return memory.get(key);
+    }
+
+    private synchronized void toMemory(String key, byte[] image) {
+        if (image.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] previous = memory.put(key, image);
+        memoryBytes += image.length - (previous == null ? 0 : previous.length);
+        Iterator<byte[]> eldest = memory.values().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private synchronized Path fromDisk(String key, OutputFormat format) throws IOException {
+        if (disk.get(key + "." + format.getExtension()) == null) {
+            return null;
+        }
+        Path file = directory.resolve(key + "." + format.getExtension());
+        if (!Files.isRegularFile(file)) {
+            diskBytes -= disk.remove(file.getFileName().toString());
+            return null;
+        }
+        // The modification time records recency across runs
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return file;
+    }
+
+    private void toDisk(String key, OutputFormat format, byte[] image) throws IOException {
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        Files.write(temp, image);
+        toDisk(key, format, temp);
+    }
+
+    // Moves an image rendered into a temporary file of the cache directory into place
+    private synchronized void toDisk(String key, OutputFormat format, Path temp) throws IOException {
+        String fileName = key + "." + format.getExtension();
+        Path file = directory.resolve(fileName);
+        long size = Files.size(temp);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Long previous = disk.put(fileName, size);
+        diskBytes += size - (previous == null ? 0 : previous);
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            Files.deleteIfExists(directory.resolve(entry.getKey()));
+            diskBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    // Rebuilds the recency order of earlier runs from the file modification times
+    private void loadDiskIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file) && !file.getFileName().toString().endsWith(".tmp")) {
+                    files.add(file);
+                }
+            }
+        }
+        Map<Path, Long> modified = new HashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file).toMillis());
+        }
+        files.sort(Comparator.comparing(modified::get));
+        for (Path file : files) {
+            long size = Files.size(file);
+            disk.put(file.getFileName().toString(), size);
+            diskBytes += size;
+        }
+    }
+
+    private static String key(String umlText, OutputFormat format) {
+        MessageDigest digest = digest(format);
+        return hex(digest.digest(umlText.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String key(Path umlFile, OutputFormat format) throws IOException {
+        MessageDigest digest = digest(format);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(umlFile)) {
+            for (int n; (n = in.read(buffer)) != -1; ) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest digest(OutputFormat format) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(format.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            return digest;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+// Analyzes a class path too large for one JVM as independent shards: the entries are split into
+// contiguous ranges of about equal size, each shard is analyzed by its own java process into a
+// partial model file, at most jobs processes at a time, and ModelMerge combines the partial
+// models. A shard indexes the entries before its range as well, without analyzing them, so a
+// class defined again in its range is skipped as it would be in front of the whole class path:
+// every class is analyzed in exactly one shard, the one of its first class path entry. A shard
+// process holds the classes of its own entries and the names of the entries before them; its
+// JVM options come from the system property shard.jvmArgs, e.g. -Dshard.jvmArgs="-Xmx2g".
+//
+// The work directory keeps, per shard, its entry list (shard-<n>.txt, the entries before its
+// range first), its partial model (shard-<n>.cdm) and its console output (shard-<n>.log).
+public final class ShardedAnalysis {
+
+    private ShardedAnalysis() {
+    }
+
+    // DependencyParser --shard <partial model> [--behind <n>] <entry | @list-file>...
+    // The first n entries are only looked up, see DependencyParser.analyzeClasspath(List, int)
+    public static int runShard(String[] args) {
+        int first = 1;
+        int behind = 0;
+        if (args.length > 2 && args[1].equals("--behind")) {
+            try {
+                behind = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                behind = -1;
+            }
+            first = 3;
+        }
+        if (args.length <= first || behind < 0) {
+            System.err.println("Usage: DependencyParser --shard <partial model> [--behind <n>] <jar | class directory | @list-file>...");
+            return BatchAnalyzer.EXIT_USAGE;
+        }
+        try {
+            List<File> classpath = new ArrayList<>();
+            for (int i = first; i < args.length; i++) {
+                if (args[i].startsWith("@")) {
+                    for (String line : Files.readAllLines(Paths.get(args[i].substring(1)), StandardCharsets.UTF_8)) {
+                        if (!line.isBlank()) {
+                            classpath.add(new File(line.trim()));
+                        }
+                    }
+                } else {
+                    classpath.add(new File(args[i]));
+                }
+            }
+            DependencyParser parser = new DependencyParser();
+            parser.setParallelism(Integer.getInteger("analysis.threads", Runtime.getRuntime().availableProcessors()));
+            if (behind >= classpath.size()) {
+                System.err.println("Shard has no entries of its own: " + behind + " of " + classpath.size() + " entries are behind");
+                return BatchAnalyzer.EXIT_USAGE;
+            }
+            parser.setKeepUnresolvedReferences(true);
+            parser.analyzeClasspath(classpath, behind);
+            parser.saveModel(Paths.get(args[0]));
+            System.out.println(parser.getMetrics().snapshot());
+            return BatchAnalyzer.EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("Shard failed: " + e.getMessage());
+            return BatchAnalyzer.EXIT_FAILURES;
+        }
+    }
+
+    // DependencyParser --merge <model> <partial model>...
+    public static int runMerge(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: DependencyParser --merge <model> <partial model>...");
+            return BatchAnalyzer.EXIT_USAGE;
+        }
+        List<Path> shardFiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            shardFiles.add(Paths.get(args[i]));
+        }
+        try {
+            System.out.println("Merged " + ModelMerge.merge(shardFiles, Paths.get(args[0])));
+            return BatchAnalyzer.EXIT_OK;
+        } catch (IOException e) {
+            System.err.println("Merge failed: " + e.getMessage());
+            return BatchAnalyzer.EXIT_FAILURES;
+        }
+    }
+
+    // Runs the shards of classpath and merges them into output
+    public static ModelMerge.Result analyze(List<File> classpath, int shardCount, int jobs, Path workDirectory, Path output) throws IOException {
+        List<List<File>> shards = split(classpath, shardCount);
+        Files.createDirectories(workDirectory);
+        List<Path> shardFiles = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int behind = lines.size();
+            Path list = workDirectory.resolve("shard-" + (i + 1) + ".txt");
+            for (File entry : shards.get(i)) {
+                lines.add(entry.getAbsolutePath());
+            }
+            Files.write(list, lines, StandardCharsets.UTF_8);
+            Path shardFile = workDirectory.resolve("shard-" + (i + 1) + "." + ModelFile.EXTENSION);
+            Path log = workDirectory.resolve("shard-" + (i + 1) + ".log");
+            shardFiles.add(shardFile);
+            tasks.add(() -> {
+                runProcess(shardFile, behind, list, log);
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, shards.size())));
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return ModelMerge.merge(shardFiles, output);
+    }
+
+    // Contiguous ranges of the class path: an entry goes to the shard its middle byte falls
+    // into when the total size is cut into count equal parts. A shard that gets no entry is
+    // left out, so there may be fewer shards than asked for.
+    static List<List<File>> split(List<File> classpath, int shardCount) throws IOException {
+        int count = Math.max(1, Math.min(shardCount, classpath.size()));
+        long[] sizes = new long[classpath.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            // Empty entries count as one byte, so that they still spread over the shards
+            sizes[i] = Math.max(1, size(classpath.get(i).toPath()));
+            total += sizes[i];
+        }
+        List<List<File>> shards = new ArrayList<>();
+        int current = -1;
+        long offset = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            int shard = (int) Math.min(count - 1, (offset + sizes[i] / 2) * count / total);
+            if (shard != current) {
+                shards.add(new ArrayList<>());
+                current = shard;
+            }
+            shards.get(shards.size() - 1).add(classpath.get(i));
+            offset += sizes[i];
+        }
+        return shards;
+    }
+
+    private static long size(Path entry) throws IOException {
+        if (!Files.isDirectory(entry)) {
+            return Files.exists(entry) ? Files.size(entry) : 0;
+        }
+        try (Stream<Path> files = Files.walk(entry)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void runProcess(Path shardFile, int behind, Path list, Path log) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : System.getProperty("shard.jvmArgs", "").trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        // Launched the way this JVM was: from the module path, java.class.path is empty
+        Module module = DependencyParser.class.getModule();
+        if (module.isNamed()) {
+            command.add("-p");
+            command.add(System.getProperty("jdk.module.path"));
+            command.add("-m");
+            command.add(module.getName() + "/" + DependencyParser.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(DependencyParser.class.getName());
+        }
+        command.add("--shard");
+        command.add(shardFile.toString());
+        command.add("--behind");
+        command.add(Integer.toString(behind));
+        command.add("@" + list);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Shard " + list.getFileName() + " failed with exit code " + exitCode + ", see " + log);
+            }
+        } finally {
+            process.destroy();
+        }
+    }
+}
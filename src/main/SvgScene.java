@@ -0,0 +1,596 @@
+package main;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+// The drawing of an SVG diagram as a flat list of shapes in paint order, each with its bounding
+// box, plus a grid over the drawing so a viewer can fetch just the shapes inside its viewport.
+// Covers what PlantUML writes: rect, ellipse, line, polyline, polygon, path (M L H V C S Q T Z,
+// absolute and relative; arcs become lines) and text, with fill, stroke and font attributes
+// set on the element itself. Groups are flattened; transforms other than none are not supported.
+public class SvgScene {
+    public enum Kind { RECT, ELLIPSE, LINE, POLYLINE, POLYGON, PATH, TEXT }
+
+    // Path operations in Shape.getPathOps; their points follow in order in Shape.getCoords
+    public static final byte MOVE = 0;   // x y
+    public static final byte LINE_TO = 1; // x y
+    public static final byte QUAD = 2;   // cx cy x y
+    public static final byte CUBIC = 3; // c1x c1y c2x c2y x y
+    public static final byte CLOSE = 4;
+
+    // Grid cell size in SVG units; shapes spanning more than MAX_CELLS cells are kept aside and
+    // checked on every query instead of being entered into each cell
+    private static final double CELL_SIZE = 256;
+    private static final int MAX_CELLS = 64;
+
+    public static final class Shape {
+        private final Kind kind;
+        // RECT: x y width height rx ry; ELLIPSE: cx cy rx ry; LINE, POLYLINE, POLYGON: points;
+        // PATH: points of the operations; TEXT: x y (baseline)
+        private final double[] coords;
+        private final byte[] pathOps;
+        private final String text;
+        private final String fill;
+        private final String stroke;
+        private final double strokeWidth;
+        private final double fontSize;
+        private final String fontFamily;
+        private final boolean bold;
+        private final double minX, minY, maxX, maxY;
+
+        private Shape(Kind kind, double[] coords, byte[] pathOps, String text, String fill, String stroke,
+                      double strokeWidth, double fontSize, String fontFamily, boolean bold, double[] bounds) {
+            this.kind = kind;
+            this.coords = coords;
+            this.pathOps = pathOps;
+            this.text = text;
+            this.fill = fill;
+            this.stroke = stroke;
+            this.strokeWidth = strokeWidth;
+            this.fontSize = fontSize;
+            this.fontFamily = fontFamily;
+            this.bold = bold;
+            this.minX = bounds[0];
+            this.minY = bounds[1];
+            this.maxX = bounds[2];
+            this.maxY = bounds[3];
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public double[] getCoords() {
+            return coords;
+        }
+
+        public byte[] getPathOps() {
+            return pathOps;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        // SVG paint as written, e.g. #FEFECE; null for none
+        public String getFill() {
+            return fill;
+        }
+
+        public String getStroke() {
+            return stroke;
+        }
+
+        public double getStrokeWidth() {
+            return strokeWidth;
+        }
+
+        public double getFontSize() {
+            return fontSize;
+        }
+
+        public String getFontFamily() {
+            return fontFamily;
+        }
+
+        public boolean isBold() {
+            return bold;
+        }
+
+        public double getMinX() {
+            return minX;
+        }
+
+        public double getMinY() {
+            return minY;
+        }
+
+        public double getMaxX() {
+            return maxX;
+        }
+
+        public double getMaxY() {
+            return maxY;
+        }
+    }
+
+    private final List<Shape> shapes;
+    private final double width;
+    private final double height;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+    private final int[] large;
+
+    private SvgScene(List<Shape> shapes, double width, double height) {
+        this.shapes = shapes;
+        this.width = width;
+        this.height = height;
+        this.columns = Math.max(1, (int) Math.ceil(width / CELL_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(height / CELL_SIZE));
+
+        List<List<Integer>> cellLists = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cellLists.add(new ArrayList<>());
+        }
+        List<Integer> largeList = new ArrayList<>();
+        for (int i = 0; i < shapes.size(); i++) {
+            Shape shape = shapes.get(i);
+            int column0 = column(shape.minX), column1 = column(shape.maxX);
+            int row0 = row(shape.minY), row1 = row(shape.maxY);
+            if ((column1 - column0 + 1) * (row1 - row0 + 1) > MAX_CELLS) {
+                largeList.add(i);
+                continue;
+            }
+            for (int row = row0; row <= row1; row++) {
+                for (int column = column0; column <= column1; column++) {
+                    cellLists.get(row * columns + column).add(i);
+                }
+            }
+        }
+        this.cells = new int[cellLists.size()][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cellLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.large = largeList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public static SvgScene parse(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return parse(in);
+        }
+    }
+
+    public static SvgScene parse(InputStream in) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                return read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            throw new IOException("Unreadable SVG: " + e.getMessage(), e);
+        }
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return shapes.size();
+    }
+
+    public Shape getShape(int index) {
+        return shapes.get(index);
+    }
+
+    // Indexes of the shapes whose bounds intersect the rectangle, in paint order
+    public int[] query(double minX, double minY, double maxX, double maxY) {
+        BitSet found = new BitSet(shapes.size());
+        for (int index : large) {
+            found.set(index);
+        }
+        int column0 = column(minX), column1 = column(maxX);
+        int row0 = row(minY), row1 = row(maxY);
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++) {
+                for (int index : cells[row * columns + column]) {
+                    found.set(index);
+                }
+            }
+        }
+        return found.stream().filter(index -> {
+            Shape shape = shapes.get(index);
+            return shape.maxX >= minX && shape.minX <= maxX && shape.maxY >= minY && shape.minY <= maxY;
+        }).toArray();
+    }
+
+    // Texts containing the query, ignoring case, in paint order
+    public List<Shape> findText(String query) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<Shape> matches = new ArrayList<>();
+        for (Shape shape : shapes) {
+            if (shape.kind == Kind.TEXT && shape.text.toLowerCase(Locale.ROOT).contains(needle)) {
+                matches.add(shape);
+            }
+        }
+        return matches;
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / CELL_SIZE)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / CELL_SIZE)));
+    }
+
+    private static SvgScene read(XMLStreamReader reader) throws XMLStreamException {
+        List<Shape> shapes = new ArrayList<>();
+        double width = 0;
+        double height = 0;
+        double maxX = 0;
+        double maxY = 0;
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String tag = reader.getLocalName();
+            Shape shape = null;
+            switch (tag) {
+                case "svg":
+                    width = length(reader.getAttributeValue(null, "width"));
+                    height = length(reader.getAttributeValue(null, "height"));
+                    String viewBox = reader.getAttributeValue(null, "viewBox");
+                    if (viewBox != null && (width == 0 || height == 0)) {
+                        double[] box = numbers(viewBox);
+                        if (box.length == 4) {
+                            width = box[2];
+                            height = box[3];
+                        }
+                    }
+                    break;
+                case "rect": {
+                    double x = number(reader, "x"), y = number(reader, "y");
+                    double w = number(reader, "width"), h = number(reader, "height");
+                    shape = shape(reader, Kind.RECT, new double[]{x, y, w, h, number(reader, "rx"), number(reader, "ry")},
+                            null, null, new double[]{x, y, x + w, y + h});
+                    break;
+                }
+                case "ellipse":
+                case "circle": {
+                    double cx = number(reader, "cx"), cy = number(reader, "cy");
+                    double rx = tag.equals("circle") ? number(reader, "r") : number(reader, "rx");
+                    double ry = tag.equals("circle") ? rx : number(reader, "ry");
+                    shape = shape(reader, Kind.ELLIPSE, new double[]{cx, cy, rx, ry},
+                            null, null, new double[]{cx - rx, cy - ry, cx + rx, cy + ry});
+                    break;
+                }
+                case "line": {
+                    double[] points = {number(reader, "x1"), number(reader, "y1"), number(reader, "x2"), number(reader, "y2")};
+                    shape = shape(reader, Kind.LINE, points, null, null, bounds(points));
+                    break;
+                }
+                case "polyline":
+                case "polygon": {
+                    double[] points = numbers(reader.getAttributeValue(null, "points"));
+                    if (points.length >= 4) {
+                        shape = shape(reader, tag.equals("polygon") ? Kind.POLYGON : Kind.POLYLINE, points, null, null, bounds(points));
+                    }
+                    break;
+                }
+                case "path": {
+                    PathBuilder path = new PathBuilder();
+                    path.parse(reader.getAttributeValue(null, "d"));
+                    if (path.count > 0) {
+                        double[] points = Arrays.copyOf(path.coords, path.count);
+                        shape = shape(reader, Kind.PATH, points, path.ops.toByteArray(), null, bounds(points));
+                    }
+                    break;
+                }
+                case "text": {
+                    double x = number(reader, "x"), y = number(reader, "y");
+                    double fontSize = reader.getAttributeValue(null, "font-size") != null ? number(reader, "font-size") : 12;
+                    double textLength = number(reader, "textLength");
+                    String fill = paint(reader.getAttributeValue(null, "fill"), "#000000");
+                    String fontFamily = reader.getAttributeValue(null, "font-family");
+                    boolean bold = "bold".equals(reader.getAttributeValue(null, "font-weight"));
+                    String text = reader.getElementText();
+                    if (textLength == 0) {
+                        // No measured width in the file; estimate it
+                        textLength = text.length() * fontSize * 0.6;
+                    }
+                    shape = new Shape(Kind.TEXT, new double[]{x, y}, null, text, fill, null, 0, fontSize, fontFamily, bold,
+                            new double[]{x, y - fontSize, x + textLength, y + fontSize * 0.25});
+                    break;
+                }
+                default:
+                    break;
+            }
+            if (shape != null) {
+                shapes.add(shape);
+                maxX = Math.max(maxX, shape.maxX);
+                maxY = Math.max(maxY, shape.maxY);
+            }
+        }
+        return new SvgScene(shapes, Math.max(width, maxX), Math.max(height, maxY));
+    }
+
+    private static Shape shape(XMLStreamReader reader, Kind kind, double[] coords, byte[] ops, String text, double[] bounds) {
+        String style = reader.getAttributeValue(null, "style");
+        String fill = attribute(reader, style, "fill");
+        String stroke = attribute(reader, style, "stroke");
+        String strokeWidth = attribute(reader, style, "stroke-width");
+        // Lines have no inside; everything else is filled black unless told otherwise, as in SVG
+        String defaultFill = kind == Kind.LINE || kind == Kind.POLYLINE ? null : "#000000";
+        double halfStroke = strokeWidth != null ? length(strokeWidth) / 2 : 0.5;
+        bounds[0] -= halfStroke;
+        bounds[1] -= halfStroke;
+        bounds[2] += halfStroke;
+        bounds[3] += halfStroke;
+        return new Shape(kind, coords, ops, text, paint(fill, defaultFill), paint(stroke, null),
+                strokeWidth != null ? length(strokeWidth) : 1, 0, null, false, bounds);
+    }
+
+    // A presentation attribute, or the same property in the style attribute, which wins
+    private static String attribute(XMLStreamReader reader, String style, String name) {
+        if (style != null) {
+            for (String declaration : style.split(";")) {
+                int colon = declaration.indexOf(':');
+                if (colon > 0 && declaration.substring(0, colon).trim().equals(name)) {
+                    return declaration.substring(colon + 1).trim();
+                }
+            }
+        }
+        return reader.getAttributeValue(null, name);
+    }
+
+    private static String paint(String value, String defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return value.equals("none") || value.equals("transparent") ? null : value;
+    }
+
+    private static double number(XMLStreamReader reader, String name) {
+        return length(reader.getAttributeValue(null, name));
+    }
+
+    // "12", "12.5px" or "12pt"; 0 when missing or a percentage
+    private static double length(String value) {
+        if (value == null || value.endsWith("%")) {
+            return 0;
+        }
+        int end = value.length();
+        while (end > 0 && Character.isLetter(value.charAt(end - 1))) {
+            end--;
+        }
+        return end == 0 ? 0 : Double.parseDouble(value.substring(0, end).trim());
+    }
+
+    private static double[] numbers(String value) {
+        if (value == null || value.isBlank()) {
+            return new double[0];
+        }
+        NumberScanner scanner = new NumberScanner(value);
+        double[] result = new double[8];
+        int count = 0;
+        while (scanner.hasNumber()) {
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = scanner.next();
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static double[] bounds(double[] points) {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            bounds[0] = Math.min(bounds[0], points[i]);
+            bounds[1] = Math.min(bounds[1], points[i + 1]);
+            bounds[2] = Math.max(bounds[2], points[i]);
+            bounds[3] = Math.max(bounds[3], points[i + 1]);
+        }
+        return bounds;
+    }
+
+    // Reads the numbers of SVG lists and path data: separated by spaces or commas, or by
+    // nothing at all before a sign or a second decimal point ("10-5", ".5.5")
+    private static class NumberScanner {
+        private final String text;
+        private int position;
+
+        NumberScanner(String text) {
+            this.text = text;
+        }
+
+        boolean hasNumber() {
+            skipSeparators();
+            if (position >= text.length()) {
+                return false;
+            }
+            char c = text.charAt(position);
+            return Character.isDigit(c) || c == '-' || c == '+' || c == '.';
+        }
+
+        double next() {
+            skipSeparators();
+            int start = position;
+            if (position < text.length() && (text.charAt(position) == '-' || text.charAt(position) == '+')) {
+                position++;
+            }
+            boolean dot = false;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (Character.isDigit(c)) {
+                    position++;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                    position++;
+                } else if ((c == 'e' || c == 'E') && position + 1 < text.length()
+                        && (Character.isDigit(text.charAt(position + 1)) || text.charAt(position + 1) == '-')) {
+                    position += 2;
+                } else {
+                    break;
+                }
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Number expected at " + position + " in " + text);
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        char nextCommand() {
+            skipSeparators();
+            return text.charAt(position++);
+        }
+
+        boolean atEnd() {
+            skipSeparators();
+            return position >= text.length();
+        }
+
+        private void skipSeparators() {
+            while (position < text.length() && (Character.isWhitespace(text.charAt(position)) || text.charAt(position) == ',')) {
+                position++;
+            }
+        }
+    }
+
+    // Turns path data into absolute MOVE, LINE_TO, QUAD, CUBIC and CLOSE operations
+    private static class PathBuilder {
+        final ByteArrayOutputStream ops = new ByteArrayOutputStream();
+        double[] coords = new double[16];
+        int count;
+
+        private double x, y, startX, startY;
+        // Reflected control point for S and T
+        private double lastControlX, lastControlY;
+        private char lastCommand;
+
+        void parse(String data) {
+            if (data == null) {
+                return;
+            }
+            NumberScanner scanner = new NumberScanner(data);
+            char command = 0;
+            while (!scanner.atEnd()) {
+                if (!scanner.hasNumber()) {
+                    command = scanner.nextCommand();
+                } else if (command == 0) {
+                    throw new IllegalArgumentException("Path data must start with a command: " + data);
+                }
+                boolean relative = Character.isLowerCase(command);
+                double dx = relative ? x : 0, dy = relative ? y : 0;
+                switch (Character.toUpperCase(command)) {
+                    case 'M':
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        startX = x;
+                        startY = y;
+                        add(MOVE, x, y);
+                        // Further pairs are implicit line-tos
+                        command = relative ? 'l' : 'L';
+                        break;
+                    case 'L':
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(LINE_TO, x, y);
+                        break;
+                    case 'H':
+                        x = scanner.next() + dx;
+                        add(LINE_TO, x, y);
+                        break;
+                    case 'V':
+                        y = scanner.next() + dy;
+                        add(LINE_TO, x, y);
+                        break;
+                    case 'C': {
+                        double c1x = scanner.next() + dx, c1y = scanner.next() + dy;
+                        double c2x = scanner.next() + dx, c2y = scanner.next() + dy;
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(CUBIC, c1x, c1y, c2x, c2y, x, y);
+                        lastControlX = c2x;
+                        lastControlY = c2y;
+                        break;
+                    }
+                    case 'S': {
+                        boolean smooth = "CcSs".indexOf(lastCommand) >= 0;
+                        double c1x = smooth ? 2 * x - lastControlX : x, c1y = smooth ? 2 * y - lastControlY : y;
+                        double c2x = scanner.next() + dx, c2y = scanner.next() + dy;
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(CUBIC, c1x, c1y, c2x, c2y, x, y);
+                        lastControlX = c2x;
+                        lastControlY = c2y;
+                        break;
+                    }
+                    case 'Q': {
+                        double cx = scanner.next() + dx, cy = scanner.next() + dy;
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(QUAD, cx, cy, x, y);
+                        lastControlX = cx;
+                        lastControlY = cy;
+                        break;
+                    }
+                    case 'T': {
+                        boolean smooth = "QqTt".indexOf(lastCommand) >= 0;
+                        double cx = smooth ? 2 * x - lastControlX : x, cy = smooth ? 2 * y - lastControlY : y;
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(QUAD, cx, cy, x, y);
+                        lastControlX = cx;
+                        lastControlY = cy;
+                        break;
+                    }
+                    case 'A':
+                        // rx ry rotation large-arc sweep x y, drawn as a straight line
+                        for (int i = 0; i < 5; i++) {
+                            scanner.next();
+                        }
+                        x = scanner.next() + dx;
+                        y = scanner.next() + dy;
+                        add(LINE_TO, x, y);
+                        break;
+                    case 'Z':
+                        x = startX;
+                        y = startY;
+                        ops.write(CLOSE);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown path command " + command + " in " + data);
+                }
+                lastCommand = command;
+            }
+        }
+
+        private void add(byte op, double... points) {
+            ops.write(op);
+            if (count + points.length > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(coords.length * 2, count + points.length));
+            }
+            System.arraycopy(points, 0, coords, count, points.length);
+            count += points.length;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package main;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps every class and package name of an analysis to a dense int id, once.
+// The simple name and the package of each symbol are computed when it is interned, so
+// consumers never have to split names again. Interning is thread-safe; ids are never reused.
+public class SymbolTable {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Grown under the lock and republished; an id obtained from ids is always covered
+    private volatile String[] names = new String[256];
+    private volatile String[] simpleNames = new String[256];
+    private volatile int[] packageIds = new int[256];
+    private int size;
+
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int lastDotIndex = name.lastIndexOf('.');
+        // Intern the package outside the lock; it may recurse through the parent packages
+        int packageId = lastDotIndex == -1 ? -1 : intern(name.substring(0, lastDotIndex));
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int newId = size;
+            if (newId == names.length) {
+                grow();
+            }
+            names[newId] = name;
+            simpleNames[newId] = lastDotIndex == -1 ? name : name.substring(lastDotIndex + 1);
+            packageIds[newId] = packageId;
+            size++;
+            ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    // For readers that already interned the package, e.g. ModelFile: one hash lookup instead of
+    // one per enclosing package. packageId must be the id of the part before the last dot.
+    int intern(String name, int packageId) {
+        synchronized (this) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int newId = size;
+            if (newId == names.length) {
+                grow();
+            }
+            names[newId] = name;
+            simpleNames[newId] = packageId == -1 ? name : name.substring(name.lastIndexOf('.') + 1);
+            packageIds[newId] = packageId;
+            size++;
+            ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    // Returns -1 for names that were never interned
+    public int lookup(Object name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    // Part after the last dot, e.g. "MessageService" for "a.b.MessageService"
+    public String getSimpleName(int id) {
+        return simpleNames[id];
+    }
+
+    // Id of the enclosing package, -1 for names without a dot
+    public int getPackageId(int id) {
+        return packageIds[id];
+    }
+
+    // Part before the last dot, empty for names without a dot
+    public String getPackageName(int id) {
+        int packageId = packageIds[id];
+        return packageId == -1 ? "" : names[packageId];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        String[] newNames = java.util.Arrays.copyOf(names, capacity);
+        String[] newSimpleNames = java.util.Arrays.copyOf(simpleNames, capacity);
+        int[] newPackageIds = java.util.Arrays.copyOf(packageIds, capacity);
+        simpleNames = newSimpleNames;
+        packageIds = newPackageIds;
+        names = newNames;
+    }
+}
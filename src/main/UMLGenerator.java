@@ -1,9 +1,106 @@
 package main;
 
-import java.util.Set;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
 
 public interface UMLGenerator {
     enum VisualizationMode { WHITE_BOX, GRAY_BOX, BLACK_BOX }
 
-    String generateUML(Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth);
-}
\ No newline at end of file
+    // One requested diagram: a visualization mode and, for GRAY_BOX, its level
+    final class View {
+        private final VisualizationMode mode;
+        private final int grayBoxLevel;
+
+        public View(VisualizationMode mode, int grayBoxLevel) {
+            this.mode = mode;
+            // The level only matters for gray-box views
+            this.grayBoxLevel = mode == VisualizationMode.GRAY_BOX ? grayBoxLevel : 0;
+        }
+
+        // White-box, black-box and gray-box at every level from 1 to globalMaxDepth - 1
+        public static List<View> allViews(int globalMaxDepth) {
+            List<View> views = new ArrayList<>();
+            views.add(new View(VisualizationMode.WHITE_BOX, 0));
+            views.add(new View(VisualizationMode.BLACK_BOX, 0));
+            for (int level = 1; level < globalMaxDepth; level++) {
+                views.add(new View(VisualizationMode.GRAY_BOX, level));
+            }
+            return views;
+        }
+
+        public VisualizationMode getMode() {
+            return mode;
+        }
+
+        public int getGrayBoxLevel() {
+            return grayBoxLevel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof View)) return false;
+            View view = (View) o;
+            return mode == view.mode && grayBoxLevel == view.grayBoxLevel;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mode, grayBoxLevel);
+        }
+
+        @Override
+        public String toString() {
+            String name = mode.name().toLowerCase().replace('_', '-');
+            return mode == VisualizationMode.GRAY_BOX ? name + "-" + grayBoxLevel : name;
+        }
+    }
+
+    // Generators read a ModelSnapshot and never modify it, so the same snapshot can be rendered
+    // any number of times, from several threads, with identical results.
+    String generateUML(ModelSnapshot snapshot, View view);
+
+    // Streams the same text as generateUML into out, so memory does not grow with the diagram size.
+    // The writer is flushed but not closed.
+    void writeUML(ModelSnapshot snapshot, View view, Writer out) throws IOException;
+
+    // Generates several views of the same model at once, keyed by view in request order
+    default Map<View, String> generateViews(ModelSnapshot snapshot, List<View> views) {
+        Map<View, String> umlTexts = new LinkedHashMap<>();
+        for (View view : views) {
+            umlTexts.put(view, generateUML(snapshot, view));
+        }
+        return umlTexts;
+    }
+
+    // The views of one partition of the model, see DiagramPartitioning
+    Map<View, String> generatePartitionViews(DiagramPartitioning partitioning, DiagramPartitioning.Partition partition, List<View> views);
+
+    // A diagram of the partitions and the edges between them; link gives each partition's URL
+    String generateOverview(DiagramPartitioning partitioning, Function<DiagramPartitioning.Partition, String> link);
+
+    default void writeUML(ModelSnapshot snapshot, View view, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeUML(snapshot, view, writer);
+        writer.flush();
+    }
+
+    // The Set based variants take a snapshot of the components for the single call
+    default String generateUML(Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth) {
+        return generateUML(ModelSnapshot.of(components, globalMaxDepth), new View(mode, grayBoxLevel));
+    }
+
+    default void writeUML(Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth, Writer out) throws IOException {
+        writeUML(ModelSnapshot.of(components, globalMaxDepth), new View(mode, grayBoxLevel), out);
+    }
+
+    default Map<View, String> generateViews(Set<Component> components, List<View> views, int globalMaxDepth) {
+        return generateViews(ModelSnapshot.of(components, globalMaxDepth), views);
+    }
+
+    default void writeUML(Set<Component> components, VisualizationMode mode, int grayBoxLevel, int globalMaxDepth, OutputStream out) throws IOException {
+        writeUML(ModelSnapshot.of(components, globalMaxDepth), new View(mode, grayBoxLevel), out);
+    }
+}
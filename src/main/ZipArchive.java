@@ -0,0 +1,512 @@
+package main;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+// Read-only zip/JAR access built on the central directory alone. The file is read through one
+// FileChannel with positional reads (64-bit offsets, so multi-GB archives work), only the central
+// directory is parsed up front, and an entry is inflated only when its stream is read. Nested
+// archives such as Spring Boot's BOOT-INF/lib/*.jar are opened in place: a stored one is a range
+// of the outer file, a deflated one is inflated into memory once; nothing is extracted to disk.
+//
+// Handles: close() closes the nested archives, every stream still open (ending their Inflaters)
+// and the file channel, and makes the archive unusable. Nothing stays mapped, so the file is
+// released at once, which matters on Windows, where a mapped file cannot be replaced.
+// A thread interrupted while reading closes the channel, as FileChannel does, which fails
+// every later read of the archive.
+public class ZipArchive implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private final String name;
+    private final Data data;
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName;
+    // Bytes in front of the archive, e.g. the launch script of a fully executable Spring Boot JAR
+    private final long prefix;
+    private final Set<Closeable> openResources = Collections.newSetFromMap(new IdentityHashMap<>());
+    private volatile boolean closed;
+
+    // An entry as described by the central directory
+    public static final class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private ZipArchive(String name, Data data) throws IOException {
+        this.name = name;
+        this.data = data;
+        CentralDirectory directory = findCentralDirectory();
+        this.prefix = directory.prefix;
+        this.entries = readEntries(directory);
+        this.entriesByName = new HashMap<>(entries.size() * 2);
+        for (Entry entry : entries) {
+            entriesByName.putIfAbsent(entry.name, entry);
+        }
+    }
+
+    public static ZipArchive open(Path file) throws IOException {
+        Data data = Data.open(file);
+        try {
+            ZipArchive archive = new ZipArchive(file.toString(), data);
+            archive.track(data);
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            throw e;
+        }
+    }
+
+    public static ZipArchive open(File file) throws IOException {
+        return open(file.toPath());
+    }
+
+    // File name, or outer!/inner for nested archives
+    public String getName() {
+        return name;
+    }
+
+    // Entries in central directory order
+    public List<Entry> getEntries() {
+        checkOpen();
+        return Collections.unmodifiableList(entries);
+    }
+
+    // Returns null when there is no such entry
+    public Entry getEntry(String entryName) {
+        checkOpen();
+        return entriesByName.get(entryName);
+    }
+
+    // Stream over the uncompressed content. Inflation happens while the stream is read.
+    public InputStream getInputStream(Entry entry) throws IOException {
+        checkOpen();
+        InputStream raw = rawData(entry);
+        InputStream stream;
+        if (entry.method == STORED) {
+            stream = new EntryStream(raw);
+        } else if (entry.method == DEFLATED) {
+            stream = new EntryInflaterStream(raw, Math.max(1, (int) Math.min(entry.compressedSize, 8192)));
+        } else {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + name);
+        }
+        return track(stream);
+    }
+
+    // Opens a JAR or zip stored inside this archive. It is closed together with this archive.
+    public ZipArchive openNested(Entry entry) throws IOException {
+        checkOpen();
+        Data nested;
+        if (entry.method == STORED) {
+            nested = data.slice(dataOffset(entry), entry.size);
+        } else {
+            if (entry.size > Integer.MAX_VALUE) {
+                throw new ZipException("Compressed nested archive too large: " + entry.name);
+            }
+            byte[] content = new byte[(int) entry.size];
+            try (InputStream in = getInputStream(entry)) {
+                new DataInputStream(in).readFully(content);
+            }
+            nested = Data.wrap(content);
+        }
+        ZipArchive archive = new ZipArchive(name + "!/" + entry.name, nested);
+        track(archive);
+        return archive;
+    }
+
+    @Override
+    public void close() throws IOException {
+        List<Closeable> resources;
+        synchronized (openResources) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            resources = new ArrayList<>(openResources);
+            openResources.clear();
+        }
+        IOException failure = null;
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private <C extends Closeable> C track(C resource) throws IOException {
+        synchronized (openResources) {
+            if (closed) {
+                resource.close();
+                throw new IOException("Archive closed: " + name);
+            }
+            openResources.add(resource);
+        }
+        return resource;
+    }
+
+    private void untrack(Closeable resource) {
+        synchronized (openResources) {
+            openResources.remove(resource);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Archive closed: " + name);
+        }
+    }
+
+    private InputStream rawData(Entry entry) throws IOException {
+        return new DataStream(data, dataOffset(entry), entry.compressedSize);
+    }
+
+    // The local header repeats name and extra field, possibly with a different extra length
+    private long dataOffset(Entry entry) throws IOException {
+        long header = prefix + entry.localHeaderOffset;
+        ByteBuffer local = data.read(header, 30);
+        if (local.getInt(0) != LOCAL_HEADER) {
+            throw new ZipException("Bad local header for " + entry.name + " in " + name);
+        }
+        return header + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+    }
+
+    private static class CentralDirectory {
+        long offset;
+        long size;
+        long count;
+        long prefix;
+    }
+
+    private CentralDirectory findCentralDirectory() throws IOException {
+        long size = data.size();
+        int tailLength = (int) Math.min(size, 22 + MAX_COMMENT);
+        if (tailLength < 22) {
+            throw new ZipException("Not a zip archive: " + name);
+        }
+        long tailStart = size - tailLength;
+        ByteBuffer tail = data.read(tailStart, tailLength);
+        int end = -1;
+        for (int i = tailLength - 22; i >= 0; i--) {
+            // The comment length has to reach exactly to the end of the file
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY && i + 22 + (tail.getShort(i + 20) & 0xFFFF) == tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("Not a zip archive (no end of central directory): " + name);
+        }
+
+        CentralDirectory directory = new CentralDirectory();
+        directory.count = tail.getShort(end + 10) & 0xFFFF;
+        directory.size = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        directory.offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        long endPosition = tailStart + end;
+
+        long locator = endPosition - 20;
+        if (locator >= 0 && data.read(locator, 4).getInt(0) == ZIP64_LOCATOR) {
+            long recordedZip64End = data.read(locator + 8, 8).getLong(0);
+            // Without a prefix the record is where the locator says, otherwise right before the locator
+            long zip64End = recordedZip64End + 56 <= locator && data.read(recordedZip64End, 4).getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY
+                    ? recordedZip64End
+                    : locator - 56;
+            ByteBuffer record = data.read(zip64End, 56);
+            if (record.getInt(0) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+                throw new ZipException("Bad zip64 end of central directory: " + name);
+            }
+            directory.count = record.getLong(32);
+            directory.size = record.getLong(40);
+            directory.offset = record.getLong(48);
+            directory.prefix = zip64End - recordedZip64End;
+        } else {
+            directory.prefix = endPosition - directory.size - directory.offset;
+        }
+        if (directory.prefix < 0 || directory.size > Integer.MAX_VALUE) {
+            throw new ZipException("Corrupt central directory: " + name);
+        }
+        return directory;
+    }
+
+    private List<Entry> readEntries(CentralDirectory directory) throws IOException {
+        ByteBuffer central = data.read(directory.prefix + directory.offset, (int) directory.size);
+        List<Entry> result = new ArrayList<>((int) Math.min(directory.count, 1 << 20));
+        int position = 0;
+        while (position + 46 <= central.limit() && central.getInt(position) == CENTRAL_HEADER) {
+            int method = central.getShort(position + 10) & 0xFFFF;
+            long crc = central.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = central.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = central.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = central.getShort(position + 28) & 0xFFFF;
+            int extraLength = central.getShort(position + 30) & 0xFFFF;
+            int commentLength = central.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = central.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            central.get(position + 46, nameBytes);
+            String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Values that do not fit 32 bits are in the zip64 extra field, in this order
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = central.getShort(extra) & 0xFFFF;
+                int length = central.getShort(extra + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = central.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = central.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = central.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+
+            result.add(new Entry(entryName, method, crc, compressedSize, size, localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    // Random access to the bytes of an archive: a file, a slice of another Data (a stored nested
+    // archive), or a heap array. Reads use absolute positions only, so any number of threads can
+    // read at once. Only the archive that opened the file closes it; slices share its channel.
+    private static final class Data implements Closeable {
+        // Exactly one of channel and bytes is set
+        private final FileChannel channel;
+        private final byte[] bytes;
+        private final long base;
+        private final long length;
+
+        private Data(FileChannel channel, byte[] bytes, long base, long length) {
+            this.channel = channel;
+            this.bytes = bytes;
+            this.base = base;
+            this.length = length;
+        }
+
+        static Data open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return new Data(channel, null, 0, channel.size());
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        static Data wrap(byte[] bytes) {
+            return new Data(null, bytes, 0, bytes.length);
+        }
+
+        long size() {
+            return length;
+        }
+
+        Data slice(long offset, long sliceLength) throws ZipException {
+            if (offset < 0 || sliceLength < 0 || offset + sliceLength > length) {
+                throw new ZipException("Entry outside of the archive");
+            }
+            return new Data(channel, bytes, base + offset, sliceLength);
+        }
+
+        void read(long position, byte[] target, int offset, int count) throws IOException {
+            if (position < 0 || position + count > length) {
+                throw new ZipException("Read outside of the archive");
+            }
+            if (channel == null) {
+                System.arraycopy(bytes, (int) (base + position), target, offset, count);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(target, offset, count);
+            long absolute = base + position;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, absolute);
+                if (read == -1) {
+                    throw new EOFException("Archive truncated while reading");
+                }
+                absolute += read;
+            }
+        }
+
+        // Little-endian view of a copied range, for header parsing
+        ByteBuffer read(long position, int count) throws IOException {
+            byte[] copy = new byte[count];
+            read(position, copy, 0, count);
+            return ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    // Sequential stream over a range of Data
+    private static final class DataStream extends InputStream {
+        private final Data data;
+        private long position;
+        private final long end;
+
+        DataStream(Data data, long start, long length) {
+            this.data = data;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int count = (int) Math.min(len, end - position);
+            data.read(position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+
+    // Stored entry content, forgotten by the archive once closed
+    private final class EntryStream extends FilterInputStream {
+        EntryStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            untrack(this);
+        }
+    }
+
+    // Inflates raw deflate data. Ends its Inflater on close and feeds the extra dummy byte the
+    // Inflater needs in nowrap mode, as java.util.zip.ZipFile does.
+    private final class EntryInflaterStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterStream(InputStream in, int bufferSize) {
+            super(in, new Inflater(true), bufferSize);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of deflated entry");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+                untrack(this);
+            }
+        }
+    }
+}
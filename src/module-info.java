@@ -2,5 +2,9 @@ module ComponentDiagramGenerator {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.xml;
+    // PlantUML is loaded at runtime into its own class loader and needs AWT/ImageIO
+    requires java.desktop;
+    // Analysis phases are reported as JFR events
+    requires jdk.jfr;
     exports main;
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The fork/join analysis against the sequential one, on JUnit's own jars: with more classes than
+// one task takes, the workers intern names and merge partial models in whatever order they
+// finish, and the generated text must still be the same byte for byte
+class DependencyParserTest {
+    private final PlantUMLGenerator generator = new PlantUMLGenerator(false);
+
+    @Test
+    void parallelAnalysisGeneratesTheSameTextAsSequential() throws Exception {
+        List<File> classpath = List.of(jarOf(Test.class), jarOf(ParameterizedTest.class));
+        DependencyParser sequential = analyze(classpath, 1);
+        DependencyParser parallel = analyze(classpath, 8);
+
+        ModelSnapshot expected = sequential.snapshot();
+        ModelSnapshot actual = parallel.snapshot();
+        List<UMLGenerator.View> views = UMLGenerator.View.allViews(expected.getGlobalMaxDepth());
+        Map<UMLGenerator.View, String> expectedTexts = generator.generateViews(expected, views);
+        Map<UMLGenerator.View, String> actualTexts = generator.generateViews(actual, views);
+        for (UMLGenerator.View view : views) {
+            assertEquals(expectedTexts.get(view), actualTexts.get(view), view.toString());
+        }
+        assertEquals(expected.getPackageCycles().report(), actual.getPackageCycles().report());
+        assertEquals(sequential.getUnresolvedClasses(), parallel.getUnresolvedClasses());
+    }
+
+    private static DependencyParser analyze(List<File> classpath, int parallelism) throws IOException {
+        DependencyParser parser = new DependencyParser();
+        parser.setParallelism(parallelism);
+        parser.analyzeClasspath(classpath);
+        return parser;
+    }
+
+    private static File jarOf(Class<?> type) throws URISyntaxException {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+}
@@ -0,0 +1,124 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The generator against the text of the original generator, and its generation paths against
+// each other, on one small model with nested packages, a missing parent and the default package
+class PlantUMLGeneratorTest {
+    // Written by the PlantUMLGenerator of the first commit for this model. Its sets and
+    // sub-package maps iterate in hash order; the package names are chosen so that this order
+    // is the name order the generator keeps now.
+    private static final Path GOLDEN = Paths.get("test", "main", "golden");
+
+    private static final UMLGenerator.View WHITE_BOX = new UMLGenerator.View(UMLGenerator.VisualizationMode.WHITE_BOX, 0);
+    private static final UMLGenerator.View BLACK_BOX = new UMLGenerator.View(UMLGenerator.VisualizationMode.BLACK_BOX, 0);
+    private static final UMLGenerator.View GRAY_BOX = new UMLGenerator.View(UMLGenerator.VisualizationMode.GRAY_BOX, 1);
+
+    private final PlantUMLGenerator generator = new PlantUMLGenerator(false);
+
+    @Test
+    void generatorMatchesOriginalOutput() throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.of(model());
+        // Gray-box views roll up collapsed subtrees; at level 1 this model has nothing to merge,
+        // so the original generator without roll-up must still agree
+        assertEquals(Files.readString(GOLDEN.resolve("white-box.puml")), generator.generateUML(snapshot, WHITE_BOX));
+        assertEquals(Files.readString(GOLDEN.resolve("gray-box-1.puml")), generator.generateUML(snapshot, GRAY_BOX));
+        assertEquals(Files.readString(GOLDEN.resolve("black-box.puml")), generator.generateUML(snapshot, BLACK_BOX));
+    }
+
+    @Test
+    void allPathsGenerateTheSameText() throws IOException {
+        Set<Component> components = new LinkedHashSet<>(model());
+        ModelSnapshot snapshot = ModelSnapshot.of(components);
+        List<UMLGenerator.View> views = UMLGenerator.View.allViews(snapshot.getGlobalMaxDepth());
+        Map<UMLGenerator.View, String> onePass = generator.generateViews(snapshot, views);
+        for (UMLGenerator.View view : views) {
+            String text = generator.generateUML(snapshot, view);
+            StringWriter streamed = new StringWriter();
+            generator.writeUML(snapshot, view, streamed);
+            assertEquals(text, streamed.toString(), view.toString());
+            assertEquals(text, onePass.get(view), view.toString());
+            assertEquals(text, generator.generateUML(components, view.getMode(), view.getGrayBoxLevel(), snapshot.getGlobalMaxDepth()), view.toString());
+        }
+    }
+
+    // Another analysis of the same input interns the names in another order; the text must not change
+    @Test
+    void textDoesNotDependOnInterningOrder() {
+        SymbolTable symbols = new SymbolTable();
+        ModelSnapshot snapshot = ModelSnapshot.of(model(symbols));
+        SymbolTable reversed = new SymbolTable();
+        for (int id = symbols.size() - 1; id >= 0; id--) {
+            reversed.intern(symbols.getName(id));
+        }
+        ModelSnapshot reinterned = ModelSnapshot.of(model(reversed));
+
+        List<UMLGenerator.View> views = UMLGenerator.View.allViews(snapshot.getGlobalMaxDepth());
+        Map<UMLGenerator.View, String> expected = generator.generateViews(snapshot, views);
+        Map<UMLGenerator.View, String> actual = generator.generateViews(reinterned, views);
+        for (UMLGenerator.View view : views) {
+            assertEquals(expected.get(view), actual.get(view), view.toString());
+        }
+    }
+
+    private static List<Component> model() {
+        return model(new SymbolTable());
+    }
+
+    // Packages as DependencyParser builds them; every class that implements an interface also
+    // requires it, as its class file references it
+    private static List<Component> model(SymbolTable symbols) {
+        Map<String, Component> model = new LinkedHashMap<>();
+        add(model, symbols, "", "Main");
+        add(model, symbols, "com");
+        add(model, symbols, "com.acme");
+        add(model, symbols, "com.acme.contract", "com.acme.contract.Service", "com.acme.contract.Repository", "com.acme.contract.Unused");
+        add(model, symbols, "com.acme.impl", "com.acme.impl.ServiceImpl", "com.acme.impl.Helper");
+        add(model, symbols, "com.acme.impl.db", "com.acme.impl.db.JdbcRepository");
+        add(model, symbols, "com.acme.webapp", "com.acme.webapp.Controller");
+        // No org.other, so this is a root of its own
+        add(model, symbols, "org.other.tools", "org.other.tools.Tool", "org.other.tools.Plugin");
+
+        provide(model.get("com.acme.contract"), "com.acme.contract.Service", "com.acme.contract.Repository", "com.acme.contract.Unused");
+        provide(model.get("org.other.tools"), "org.other.tools.Plugin");
+
+        model.get("com.acme.impl").addClassImplementation("com.acme.impl.ServiceImpl", "com.acme.contract.Service");
+        model.get("com.acme.impl").getRequiredInterfaces().add("com.acme.contract.Service");
+        model.get("com.acme.impl.db").addClassImplementation("com.acme.impl.db.JdbcRepository", "com.acme.contract.Repository");
+        model.get("com.acme.impl.db").getRequiredInterfaces().add("com.acme.contract.Repository");
+        model.get("com.acme.impl").getConcreteDependencies().add("com.acme.impl.db.JdbcRepository");
+
+        model.get("").getRequiredInterfaces().add("com.acme.contract.Service");
+        model.get("com.acme.webapp").getRequiredInterfaces().add("com.acme.contract.Service");
+        model.get("com.acme.webapp").getRequiredInterfaces().add("org.other.tools.Plugin");
+        model.get("org.other.tools").getRequiredInterfaces().add("com.acme.contract.Repository");
+        return new ArrayList<>(model.values());
+    }
+
+    private static void add(Map<String, Component> model, SymbolTable symbols, String packageName, String... classes) {
+        Component component = new Component(packageName, symbols);
+        component.setDepth(packageName.isEmpty() ? 0 : packageName.split("\\.").length);
+        for (String className : classes) {
+            component.getComposedParts().add(className);
+        }
+        int lastDot = packageName.lastIndexOf('.');
+        Component parent = lastDot == -1 ? null : model.get(packageName.substring(0, lastDot));
+        if (parent != null) {
+            parent.addSubPackage(packageName, component);
+        }
+        model.put(packageName, component);
+    }
+
+    private static void provide(Component component, String... interfaces) {
+        component.getProvidedInterfaces().addAll(Arrays.asList(interfaces));
+    }
+}